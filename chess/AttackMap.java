@@ -0,0 +1,279 @@
+package chess;
+
+import java.util.Arrays;
+
+/**
+ * Per-side counts of how many pieces attack each square, kept up to date
+ * as the board changes so that "is this square attacked" is one lookup.
+ *
+ * Every change to a square goes through beforeChange and afterChange.
+ * Between the two calls only that square may change. A square changing
+ * affects the attacks of the piece on it and of every rook, bishop or
+ * queen whose line reaches it, so those are taken off first and put back
+ * afterwards.
+ *
+ * The map also keeps the board as bitboards, bit i for board index i: all
+ * occupied squares, which is what slider attacks are looked up by (see
+ * Magic), each side's pieces and each kind of piece.
+ */
+final class AttackMap {
+
+	static final int WHITE = 0;
+	static final int BLACK = 1;
+
+	private final ReturnPiece[] board;
+	private final int[][] counts = new int[2][64];
+	private long occupied;
+	private final long[] sides = new long[2];
+	private long pawns;
+	private long knights;
+	private long diagonal; // Bishops and queens.
+	private long straight; // Rooks and queens.
+	private long kings;
+	// Sliders taken off by beforeChange, to be put back by afterChange.
+	private final int[] pending = new int[8];
+	private int pendingCount;
+
+	AttackMap(ReturnPiece[] board) {
+		this.board = board;
+	}
+
+	/**
+	 * Copies another map's counts, for a board that holds the same position.
+	 */
+	AttackMap(ReturnPiece[] board, AttackMap other) {
+		this.board = board;
+		System.arraycopy(other.counts[WHITE], 0, counts[WHITE], 0, 64);
+		System.arraycopy(other.counts[BLACK], 0, counts[BLACK], 0, 64);
+		occupied = other.occupied;
+		sides[WHITE] = other.sides[WHITE];
+		sides[BLACK] = other.sides[BLACK];
+		pawns = other.pawns;
+		knights = other.knights;
+		diagonal = other.diagonal;
+		straight = other.straight;
+		kings = other.kings;
+	}
+
+	boolean isAttacked(int side, int square) {
+		return counts[side][square] > 0;
+	}
+
+	int attackers(int side, int square) {
+		return counts[side][square];
+	}
+
+	/**
+	 * Returns the occupied squares as a bitboard, bit i for board index i.
+	 */
+	long occupied() {
+		return occupied;
+	}
+
+	long pieces(int side) {
+		return sides[side];
+	}
+
+	long pawns() {
+		return pawns;
+	}
+
+	long knights() {
+		return knights;
+	}
+
+	long bishopsAndQueens() {
+		return diagonal;
+	}
+
+	long rooksAndQueens() {
+		return straight;
+	}
+
+	long kings() {
+		return kings;
+	}
+
+	void clear() {
+		Arrays.fill(counts[WHITE], 0);
+		Arrays.fill(counts[BLACK], 0);
+		occupied = 0;
+		sides[WHITE] = 0;
+		sides[BLACK] = 0;
+		pawns = 0;
+		knights = 0;
+		diagonal = 0;
+		straight = 0;
+		kings = 0;
+		pendingCount = 0;
+	}
+
+	/**
+	 * Recounts every square from scratch, for a board that was filled in
+	 * one go rather than square by square.
+	 */
+	void rebuild() {
+		clear();
+		for (int square = 0; square < 64; square++) {
+			if (board[square] != null) {
+				occupied |= 1L << square;
+				mark(square, 1L << square);
+			}
+		}
+		for (int square = 0; square < 64; square++) {
+			if (board[square] != null) {
+				update(square, 1);
+			}
+		}
+	}
+
+	/**
+	 * Takes off the attacks that depend on square, before it changes.
+	 */
+	void beforeChange(int square) {
+		pendingCount = 0;
+		// The nearest piece along each line from square is the only one that
+		// could be a slider looking through it.
+		long rookLines = Magic.rookAttacks(square, occupied) & occupied;
+		long bishopLines = Magic.bishopAttacks(square, occupied) & occupied;
+		for (long seen = rookLines | bishopLines; seen != 0; seen &= seen - 1) {
+			int from = Long.numberOfTrailingZeros(seen);
+			if (slidesAlong(board[from], (bishopLines & (1L << from)) != 0)) {
+				pending[pendingCount++] = from;
+				update(from, -1);
+			}
+		}
+		if (board[square] != null) {
+			update(square, -1);
+			mark(square, 0);
+		}
+	}
+
+	/**
+	 * Puts back the attacks taken off by beforeChange, now that square has
+	 * its new contents.
+	 */
+	void afterChange(int square) {
+		if (board[square] != null) {
+			occupied |= 1L << square;
+			mark(square, 1L << square);
+		} else {
+			occupied &= ~(1L << square);
+		}
+		for (int i = 0; i < pendingCount; i++) {
+			update(pending[i], 1);
+		}
+		pendingCount = 0;
+		if (board[square] != null) {
+			update(square, 1);
+		}
+	}
+
+	// Sets the bit for square to bit in the side and kind bitboards of the piece on it.
+	private void mark(int square, long bit) {
+		ReturnPiece piece = board[square];
+		long clear = ~(1L << square);
+		int side = piece.pieceType.name().charAt(0) == 'W' ? WHITE : BLACK;
+		sides[side] = (sides[side] & clear) | bit;
+		switch (piece.pieceType) {
+			case WP:
+			case BP:
+				pawns = (pawns & clear) | bit;
+				break;
+			case WN:
+			case BN:
+				knights = (knights & clear) | bit;
+				break;
+			case WB:
+			case BB:
+				diagonal = (diagonal & clear) | bit;
+				break;
+			case WR:
+			case BR:
+				straight = (straight & clear) | bit;
+				break;
+			case WQ:
+			case BQ:
+				diagonal = (diagonal & clear) | bit;
+				straight = (straight & clear) | bit;
+				break;
+			default:
+				kings = (kings & clear) | bit;
+				break;
+		}
+	}
+
+	private static boolean slidesAlong(ReturnPiece piece, boolean diagonal) {
+		switch (piece.pieceType) {
+			case WQ:
+			case BQ:
+				return true;
+			case WR:
+			case BR:
+				return !diagonal;
+			case WB:
+			case BB:
+				return diagonal;
+			default:
+				return false;
+		}
+	}
+
+	// Adds delta to every square attacked by the piece on square.
+	private void update(int square, int delta) {
+		ReturnPiece piece = board[square];
+		int side = piece.pieceType.name().charAt(0) == 'W' ? WHITE : BLACK;
+		int[] sideCounts = counts[side];
+		int file = square & 7;
+		int rank = square >> 3;
+		switch (piece.pieceType) {
+			case WP:
+			case BP:
+				int forward = side == WHITE ? 1 : -1;
+				if (rank + forward >= 0 && rank + forward <= 7) {
+					if (file > 0) {
+						sideCounts[square + forward * 8 - 1] += delta;
+					}
+					if (file < 7) {
+						sideCounts[square + forward * 8 + 1] += delta;
+					}
+				}
+				break;
+			case WN:
+			case BN:
+				step(sideCounts, file, rank, MoveGenerator.KNIGHT_STEPS, delta);
+				break;
+			case WK:
+			case BK:
+				step(sideCounts, file, rank, MoveGenerator.KING_STEPS, delta);
+				break;
+			case WR:
+			case BR:
+				add(sideCounts, Magic.rookAttacks(square, occupied), delta);
+				break;
+			case WB:
+			case BB:
+				add(sideCounts, Magic.bishopAttacks(square, occupied), delta);
+				break;
+			default:
+				add(sideCounts, Magic.queenAttacks(square, occupied), delta);
+				break;
+		}
+	}
+
+	private static void step(int[] sideCounts, int file, int rank, int[][] steps, int delta) {
+		for (int[] s : steps) {
+			int f = file + s[0];
+			int r = rank + s[1];
+			if (f >= 0 && f <= 7 && r >= 0 && r <= 7) {
+				sideCounts[r * 8 + f] += delta;
+			}
+		}
+	}
+
+	private static void add(int[] sideCounts, long squares, int delta) {
+		for (; squares != 0; squares &= squares - 1) {
+			sideCounts[Long.numberOfTrailingZeros(squares)] += delta;
+		}
+	}
+}
@@ -0,0 +1,178 @@
+package chess;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Replays archives of recorded games on every core.
+ *
+ * A game file holds one move per line in the same format PlayChess reads,
+ * e.g. "e2 e4". Games are separated by a blank line or a "reset" line, and
+ * "quit" ends the file. Files are streamed through a buffered reader and
+ * games are handed to a fork-join pool in chunks; each chunk replays its
+ * games on its own GameSession, so workers share no game state.
+ *
+ * One line is printed per game, in input order, followed by totals.
+ *
+ * Usage: java chess.BatchReplay [-threads N] file...
+ */
+public class BatchReplay {
+
+	// Games per task; big enough to amortize scheduling, small enough to balance.
+	private static final int CHUNK_SIZE = 256;
+
+	static class GameResult {
+		String source;
+		int index;
+		int moves;
+		int illegalMoves;
+		ReturnPlay.Message outcome; // null if the game just stopped without a result
+	}
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		int threads = Runtime.getRuntime().availableProcessors();
+		List<String> files = new ArrayList<>();
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-threads") && i + 1 < args.length) {
+				threads = Integer.parseInt(args[++i]);
+			} else {
+				files.add(args[i]);
+			}
+		}
+		if (files.isEmpty()) {
+			System.err.println("Usage: java chess.BatchReplay [-threads N] file...");
+			return;
+		}
+
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		// Chunks still being replayed, oldest first, so results print in order.
+		ArrayDeque<Future<List<GameResult>>> inFlight = new ArrayDeque<>();
+		int maxInFlight = threads * 4;
+		Map<ReturnPlay.Message, Integer> outcomes = new EnumMap<>(ReturnPlay.Message.class);
+		long[] totals = new long[3]; // games, moves, games with no result
+		long start = System.nanoTime();
+
+		for (String file : files) {
+			try (BufferedReader in = Files.newBufferedReader(Paths.get(file), StandardCharsets.UTF_8)) {
+				List<List<String>> chunk = new ArrayList<>(CHUNK_SIZE);
+				List<String> game = new ArrayList<>();
+				int firstIndex = 1;
+				String line;
+				while ((line = in.readLine()) != null) {
+					String trimmed = line.trim();
+					if (trimmed.equals("quit")) {
+						break;
+					}
+					if (trimmed.isEmpty() || trimmed.equals("reset")) {
+						if (!game.isEmpty()) {
+							chunk.add(game);
+							game = new ArrayList<>();
+						}
+					} else {
+						game.add(trimmed);
+					}
+					if (chunk.size() == CHUNK_SIZE) {
+						inFlight.add(submit(pool, file, firstIndex, chunk));
+						firstIndex += chunk.size();
+						chunk = new ArrayList<>(CHUNK_SIZE);
+						while (inFlight.size() > maxInFlight) {
+							report(inFlight.poll(), outcomes, totals);
+						}
+					}
+				}
+				if (!game.isEmpty()) {
+					chunk.add(game);
+				}
+				if (!chunk.isEmpty()) {
+					inFlight.add(submit(pool, file, firstIndex, chunk));
+				}
+			}
+		}
+		while (!inFlight.isEmpty()) {
+			report(inFlight.poll(), outcomes, totals);
+		}
+		pool.shutdown();
+
+		double seconds = Math.max(1, System.nanoTime() - start) / 1e9;
+		System.out.println();
+		System.out.printf("%d games, %d moves in %.3f s on %d threads: %.0f games/s, %.0f moves/s%n",
+				totals[0], totals[1], seconds, threads, totals[0] / seconds, totals[1] / seconds);
+		for (Map.Entry<ReturnPlay.Message, Integer> entry : outcomes.entrySet()) {
+			System.out.println(entry.getKey() + ": " + entry.getValue());
+		}
+		System.out.println("no result: " + totals[2]);
+	}
+
+	private static Future<List<GameResult>> submit(ForkJoinPool pool, String source, int firstIndex,
+			List<List<String>> games) {
+		return pool.submit(() -> {
+			GameSession session = new GameSession();
+			List<GameResult> results = new ArrayList<>(games.size());
+			for (int i = 0; i < games.size(); i++) {
+				session.start();
+				results.add(replay(session, source, firstIndex + i, games.get(i)));
+			}
+			return results;
+		});
+	}
+
+	/**
+	 * Plays one game's moves on a session that has just been started, up to
+	 * the first move that ends the game.
+	 */
+	static GameResult replay(GameSession session, String source, int index, List<String> moves) {
+		GameResult result = new GameResult();
+		result.source = source;
+		result.index = index;
+		for (String move : moves) {
+			ReturnPlay.Message message = session.play(move).message;
+			if (message == ReturnPlay.Message.ILLEGAL_MOVE) {
+				result.illegalMoves++;
+				continue;
+			}
+			result.moves++;
+			if (message != null && message != ReturnPlay.Message.CHECK) {
+				result.outcome = message;
+				break;
+			}
+		}
+		return result;
+	}
+
+	private static void report(Future<List<GameResult>> future, Map<ReturnPlay.Message, Integer> outcomes,
+			long[] totals) throws InterruptedException {
+		List<GameResult> results;
+		try {
+			results = future.get();
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Replay failed", e.getCause());
+		}
+		StringBuilder sb = new StringBuilder();
+		for (GameResult r : results) {
+			sb.append(r.source).append(':').append(r.index)
+					.append("\tmoves ").append(r.moves)
+					.append("\tillegal ").append(r.illegalMoves)
+					.append('\t').append(r.outcome == null ? "no result" : r.outcome.toString())
+					.append('\n');
+			totals[0]++;
+			totals[1] += r.moves;
+			if (r.outcome == null) {
+				totals[2]++;
+			} else {
+				outcomes.merge(r.outcome, 1, Integer::sum);
+			}
+		}
+		System.out.print(sb);
+	}
+}
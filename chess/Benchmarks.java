@@ -0,0 +1,44 @@
+package chess;
+
+/**
+ * Inputs for the move-path benchmarks in jmh/chess/MovePathBenchmark.
+ *
+ * Usage: mvn -B -f jmh/pom.xml package
+ *        java -jar jmh/target/benchmarks.jar -prof gc [regexp]
+ */
+final class Benchmarks {
+
+	// A short game that only uses moves Chess.play accepts, castling included.
+	static final String[] SCRIPTED_GAME = {
+			"e2 e4", "e7 e5", "g1 f3", "b8 c6", "f1 e2", "g8 f6", "e1 g1", "f8 e7",
+			"d2 d3", "e8 g8", "b1 c3", "d7 d6", "c1 e3", "c8 e6", "d1 d2", "d8 d7",
+			"a1 d1", "a8 d8", "h2 h3", "h7 h6" };
+
+	static final int[] ENCODED_GAME = new int[SCRIPTED_GAME.length];
+
+	static {
+		for (int i = 0; i < SCRIPTED_GAME.length; i++) {
+			ENCODED_GAME[i] = Chess.encodeMove(SCRIPTED_GAME[i]);
+		}
+	}
+
+	// Valid moves, a promotion, castling, a draw offer and some that do not parse.
+	static final String[] MOVE_TEXTS = { "e2 e4", "g1 f3", "e7 e8 Q", "e1 g1", "a7 a8 N draw?",
+			"resign", "h2 h9", "e2" };
+
+	private Benchmarks() {
+	}
+
+	/**
+	 * Returns a board with only the two kings, a rook and a queen on it.
+	 */
+	static GameSession sparseBoard() {
+		GameSession sparse = new GameSession();
+		sparse.clearBoard();
+		sparse.addPiece(ReturnPiece.PieceType.WK, ReturnPiece.PieceFile.g, 1);
+		sparse.addPiece(ReturnPiece.PieceType.WR, ReturnPiece.PieceFile.a, 1);
+		sparse.addPiece(ReturnPiece.PieceType.BK, ReturnPiece.PieceFile.e, 8);
+		sparse.addPiece(ReturnPiece.PieceType.BQ, ReturnPiece.PieceFile.d, 5);
+		return sparse;
+	}
+}
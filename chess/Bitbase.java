@@ -0,0 +1,384 @@
+package chess;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Win/draw/loss tables for king and queen, king and rook, and king and
+ * pawn against a lone king.
+ *
+ * Every position of an ending is numbered by the stronger side's king
+ * square, the lone king's square, the extra piece's square and who is to
+ * move, 64 * 64 * 64 * 2 positions at 2 bits each, so a table is 128 KB and
+ * a probe is one index calculation and one byte read from the mapped file.
+ * Tables are written with white as the stronger side; a position where
+ * black has the piece is probed with the board mirrored.
+ *
+ * The tables are solved offline by retrograde analysis. The successors of
+ * every position are found once with the game's own move generator, then
+ * values are propagated back from the checkmates and stalemates until
+ * nothing changes. Positions that never resolve are draws. Castling rights
+ * are assumed gone, as they are in any position reached from a real game
+ * once it is down to three pieces.
+ *
+ * Usage: java chess.Bitbase [file]   (writes bitbases.bin by default)
+ */
+final class Bitbase implements Closeable {
+
+	// Stored values, from the stronger side's point of view in the file and
+	// from the side to move's point of view when returned by probe.
+	static final int UNKNOWN = 0;
+	static final int DRAW = 1;
+	static final int WIN = 2;
+	static final int LOSS = 3;
+
+	// The extra piece of each ending, in file order; pawns promote into
+	// the earlier tables, so those must be solved first.
+	private static final ReturnPiece.PieceType[] ENDINGS = { ReturnPiece.PieceType.WQ, ReturnPiece.PieceType.WR,
+			ReturnPiece.PieceType.WP };
+	private static final int POSITIONS = 64 * 64 * 64 * 2;
+	private static final int TABLE_BYTES = POSITIONS / 4;
+	private static final int MAGIC = 0x4B424231; // "KBB1"
+	private static final int HEADER_SIZE = 4;
+
+	// Only used while solving: no value yet.
+	private static final byte PENDING = 4;
+
+	private static final ReturnPiece.PieceFile[] FILES = ReturnPiece.PieceFile.values();
+
+	private final FileChannel channel;
+	private final MappedByteBuffer tables;
+
+	private Bitbase(FileChannel channel, MappedByteBuffer tables) {
+		this.channel = channel;
+		this.tables = tables;
+	}
+
+	static Bitbase open(Path file) throws IOException {
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+		try {
+			if (channel.size() != HEADER_SIZE + (long) ENDINGS.length * TABLE_BYTES) {
+				throw new IOException(file + " is not a bitbase file");
+			}
+			MappedByteBuffer tables = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			tables.order(ByteOrder.BIG_ENDIAN);
+			if (tables.getInt(0) != MAGIC) {
+				throw new IOException(file + " is not a bitbase file");
+			}
+			return new Bitbase(channel, tables);
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Looks the position up if it is one of the covered endings.
+	 *
+	 * @return WIN, DRAW or LOSS for the side to move, or UNKNOWN if the
+	 *         position is not covered
+	 */
+	int probe(GameSession session) {
+		int count = session.pieceCount();
+		if (count == 2) { // Bare kings.
+			return DRAW;
+		}
+		if (count != 3) {
+			return UNKNOWN;
+		}
+		int whiteKing = -1;
+		int blackKing = -1;
+		int pieceSquare = -1;
+		ReturnPiece.PieceType pieceType = null;
+		for (int square = 0; square < 64; square++) {
+			ReturnPiece p = session.pieceAt(square);
+			if (p == null) {
+				continue;
+			}
+			if (p.pieceType == ReturnPiece.PieceType.WK) {
+				whiteKing = square;
+			} else if (p.pieceType == ReturnPiece.PieceType.BK) {
+				blackKing = square;
+			} else {
+				pieceSquare = square;
+				pieceType = p.pieceType;
+			}
+		}
+		if (whiteKing < 0 || blackKing < 0 || pieceType == null) {
+			return UNKNOWN;
+		}
+
+		char kind = pieceType.name().charAt(1);
+		if (kind == 'B' || kind == 'N') { // A lone minor piece cannot mate.
+			return DRAW;
+		}
+		int table = ending(kind);
+		if (table < 0) {
+			return UNKNOWN;
+		}
+		boolean whiteStrong = pieceType.name().charAt(0) == 'W';
+		boolean strongToMove = (session.getTurn() == GameSession.Player.white) == whiteStrong;
+		int index;
+		if (whiteStrong) {
+			index = index(whiteKing, blackKing, pieceSquare, strongToMove);
+		} else { // Flip the board so the stronger side is white.
+			index = index(blackKing ^ 56, whiteKing ^ 56, pieceSquare ^ 56, strongToMove);
+		}
+
+		int value = (tables.get(HEADER_SIZE + table * TABLE_BYTES + (index >> 2)) >> ((index & 3) * 2)) & 3;
+		if (strongToMove || value == DRAW || value == UNKNOWN) {
+			return value;
+		}
+		return value == WIN ? LOSS : WIN;
+	}
+
+	/**
+	 * Turns a probe into the result it forces, for ending games early.
+	 *
+	 * @return CHECKMATE_WHITE_WINS, CHECKMATE_BLACK_WINS or DRAW, or null if
+	 *         the position is not covered
+	 */
+	ReturnPlay.Message adjudicate(GameSession session) {
+		int value = probe(session);
+		if (value == UNKNOWN) {
+			return null;
+		}
+		if (value == DRAW) {
+			return ReturnPlay.Message.DRAW;
+		}
+		boolean whiteToMove = session.getTurn() == GameSession.Player.white;
+		if ((value == WIN) == whiteToMove) {
+			return ReturnPlay.Message.CHECKMATE_WHITE_WINS;
+		}
+		return ReturnPlay.Message.CHECKMATE_BLACK_WINS;
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	private static int ending(char kind) {
+		for (int i = 0; i < ENDINGS.length; i++) {
+			if (ENDINGS[i].name().charAt(1) == kind) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static int index(int strongKing, int weakKing, int piece, boolean strongToMove) {
+		return ((strongKing << 12) | (weakKing << 6) | piece) << 1 | (strongToMove ? 0 : 1);
+	}
+
+	/**
+	 * Solves every ending and writes them to file.
+	 */
+	static void generate(Path file, PrintStream log) throws IOException {
+		byte[][] solved = new byte[ENDINGS.length][];
+		for (int i = 0; i < ENDINGS.length; i++) {
+			long start = System.nanoTime();
+			solved[i] = solve(ENDINGS[i], solved);
+			if (log != null) {
+				int[] counts = new int[5];
+				for (byte value : solved[i]) {
+					counts[value]++;
+				}
+				log.printf("K%sK: %d wins, %d draws, %d losses, %d illegal in %.1f s%n",
+						ENDINGS[i].name().substring(1), counts[WIN], counts[DRAW], counts[LOSS], counts[UNKNOWN],
+						(System.nanoTime() - start) / 1e9);
+			}
+		}
+
+		ByteBuffer out = ByteBuffer.allocate(HEADER_SIZE + ENDINGS.length * TABLE_BYTES).order(ByteOrder.BIG_ENDIAN);
+		out.putInt(MAGIC);
+		for (byte[] values : solved) {
+			for (int i = 0; i < POSITIONS; i += 4) {
+				out.put((byte) (values[i] | values[i + 1] << 2 | values[i + 2] << 4 | values[i + 3] << 6));
+			}
+		}
+		out.flip();
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			while (out.hasRemaining()) {
+				channel.write(out);
+			}
+		}
+	}
+
+	// Solves one ending, one byte per position. Earlier endings in solved
+	// answer for pawns that promote.
+	private static byte[] solve(ReturnPiece.PieceType type, byte[][] solved) {
+		GameSession session = new GameSession();
+		session.clearBoard();
+		int[] moves = new int[MoveGenerator.MAX_MOVES];
+		byte[] values = new byte[POSITIONS];
+		// Successors of position i are successors[first[i]] up to first[i + 1].
+		// A successor is a position index, or -1 - value for a result known
+		// straight away, such as a capture leaving bare kings.
+		int[] first = new int[POSITIONS + 1];
+		int[] successors = new int[POSITIONS * 8];
+		int size = 0;
+		int[] placed = { -1, -1, -1 };
+
+		for (int index = 0; index < POSITIONS; index++) {
+			first[index] = size;
+			int strongKing = index >> 13;
+			int weakKing = (index >> 7) & 63;
+			int piece = (index >> 1) & 63;
+			boolean strongToMove = (index & 1) == 0;
+			if (strongKing == weakKing || strongKing == piece || weakKing == piece
+					|| (Math.abs((strongKing & 7) - (weakKing & 7)) <= 1 && Math.abs((strongKing >> 3) - (weakKing >> 3)) <= 1)
+					|| (type == ReturnPiece.PieceType.WP && (piece < 8 || piece >= 56))) {
+				values[index] = UNKNOWN;
+				continue;
+			}
+
+			for (int square : placed) {
+				if (square >= 0) {
+					session.removePieceAt(square);
+				}
+			}
+			session.addPiece(ReturnPiece.PieceType.WK, FILES[strongKing & 7], (strongKing >> 3) + 1);
+			session.addPiece(ReturnPiece.PieceType.BK, FILES[weakKing & 7], (weakKing >> 3) + 1);
+			session.addPiece(type, FILES[piece & 7], (piece >> 3) + 1);
+			placed[0] = strongKing;
+			placed[1] = weakKing;
+			placed[2] = piece;
+			GameSession.Player mover = strongToMove ? GameSession.Player.white : GameSession.Player.black;
+			GameSession.Player waiting = strongToMove ? GameSession.Player.black : GameSession.Player.white;
+			session.setTurn(mover);
+			if (session.isInCheck(waiting)) { // The side that just moved left its king in check.
+				values[index] = UNKNOWN;
+				continue;
+			}
+
+			int count = MoveGenerator.generateLegal(session, moves);
+			if (count == 0) {
+				if (!session.isInCheck(mover)) {
+					values[index] = DRAW;
+				} else if (strongToMove) {
+					values[index] = LOSS;
+				} else {
+					values[index] = WIN;
+				}
+				continue;
+			}
+			if (size + count > successors.length) {
+				successors = Arrays.copyOf(successors, successors.length * 2);
+			}
+			for (int i = 0; i < count; i++) {
+				session.makeMove(moves[i]);
+				successors[size++] = successor(session, !strongToMove, solved);
+				session.unmakeMove();
+			}
+			values[index] = PENDING;
+		}
+		first[POSITIONS] = size;
+
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			for (int index = 0; index < POSITIONS; index++) {
+				if (values[index] != PENDING) {
+					continue;
+				}
+				boolean strongToMove = (index & 1) == 0;
+				int wins = 0;
+				int draws = 0;
+				int losses = 0;
+				int pending = 0;
+				for (int i = first[index]; i < first[index + 1]; i++) {
+					int code = successors[i];
+					int value = code < 0 ? -1 - code : values[code];
+					if (value == WIN) {
+						wins++;
+					} else if (value == DRAW) {
+						draws++;
+					} else if (value == LOSS) {
+						losses++;
+					} else {
+						pending++;
+					}
+				}
+				byte value = PENDING;
+				if (strongToMove) { // One winning move is enough.
+					if (wins > 0) {
+						value = WIN;
+					} else if (pending == 0) {
+						value = (byte) (draws > 0 ? DRAW : LOSS);
+					}
+				} else { // The lone king escapes if any move does not lose.
+					if (losses > 0) {
+						value = LOSS;
+					} else if (pending == 0) {
+						value = (byte) (draws > 0 ? DRAW : WIN);
+					}
+				}
+				if (value != PENDING) {
+					values[index] = value;
+					changed = true;
+				}
+			}
+		}
+		for (int index = 0; index < POSITIONS; index++) {
+			if (values[index] == PENDING) { // No forced win was found.
+				values[index] = DRAW;
+			}
+		}
+		return values;
+	}
+
+	// Names the position after a move, or its value if it left this ending.
+	private static int successor(GameSession session, boolean strongToMove, byte[][] solved) {
+		if (session.pieceCount() == 2) {
+			return -1 - DRAW;
+		}
+		int strongKing = -1;
+		int weakKing = -1;
+		int piece = -1;
+		char kind = 0;
+		for (int square = 0; square < 64; square++) {
+			ReturnPiece p = session.pieceAt(square);
+			if (p == null) {
+				continue;
+			}
+			if (p.pieceType == ReturnPiece.PieceType.WK) {
+				strongKing = square;
+			} else if (p.pieceType == ReturnPiece.PieceType.BK) {
+				weakKing = square;
+			} else {
+				piece = square;
+				kind = p.pieceType.name().charAt(1);
+			}
+		}
+		int index = index(strongKing, weakKing, piece, strongToMove);
+		if (kind == 'P') {
+			return index;
+		}
+		if (kind == 'B' || kind == 'N') {
+			return -1 - DRAW;
+		}
+		int table = ending(kind);
+		if (solved[table] == null) { // Still solving this ending.
+			return index;
+		}
+		return -1 - solved[table][index];
+	}
+
+	public static void main(String[] args) throws IOException {
+		Path file = Paths.get(args.length > 0 ? args[0] : "bitbases.bin");
+		long start = System.nanoTime();
+		generate(file, System.out);
+		System.out.printf("wrote %s in %.1f s%n", file, (System.nanoTime() - start) / 1e9);
+	}
+}
@@ -0,0 +1,99 @@
+package chess;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+/**
+ * Draws the board a rank per row, "##" on the dark squares and the rank
+ * digit at the end, with the file letters underneath, into one char
+ * buffer that is allocated once and reused for every move. After a move
+ * only the squares in its PlayDelta are redrawn, and the whole board goes
+ * out in a single write.
+ */
+class BoardRenderer {
+
+	// Each rank row is 8 squares of "xx ", the rank digit and a newline.
+	private static final int ROW_LENGTH = 8 * 3 + 2;
+	private static final String FILE_LABELS = " a  b  c  d  e  f  g  h\n";
+
+	private final char[] buffer = new char[8 * ROW_LENGTH + FILE_LABELS.length()];
+
+	BoardRenderer() {
+		for (int row = 0; row < 8; row++) {
+			int offset = row * ROW_LENGTH;
+			buffer[offset + 8 * 3] = (char) ('8' - row);
+			buffer[offset + 8 * 3 + 1] = '\n';
+		}
+		FILE_LABELS.getChars(0, FILE_LABELS.length(), buffer, 8 * ROW_LENGTH);
+		clear();
+	}
+
+	/**
+	 * Redraws every square from a full list of pieces.
+	 */
+	void render(List<ReturnPiece> pieces) {
+		clear();
+		if (pieces == null) {
+			return;
+		}
+		for (int i = 0; i < pieces.size(); i++) {
+			ReturnPiece p = pieces.get(i);
+			drawPiece((p.pieceRank - 1) * 8 + p.pieceFile.ordinal(), p);
+		}
+	}
+
+	/**
+	 * Redraws only the squares a move changed.
+	 */
+	void apply(PlayDelta delta) {
+		if (delta.captured != null) {
+			drawEmpty(delta.capturedSquare);
+		}
+		drawEmpty(delta.from);
+		drawPiece(delta.to, delta.moved);
+		if (delta.castledRook != null) {
+			drawEmpty(delta.rookFrom);
+			drawPiece(delta.rookTo, delta.castledRook);
+		}
+	}
+
+	/**
+	 * Writes the board in one call; the caller decides when to flush.
+	 */
+	void writeTo(Writer out) throws IOException {
+		out.write(buffer, 0, buffer.length);
+	}
+
+	@Override
+	public String toString() {
+		return new String(buffer);
+	}
+
+	private void clear() {
+		for (int square = 0; square < 64; square++) {
+			drawEmpty(square);
+		}
+	}
+
+	private void drawEmpty(int square) {
+		int offset = offset(square);
+		// a8 is light, b8 is dark.
+		char c = ((square >> 3) + (square & 7)) % 2 == 0 ? '#' : ' ';
+		buffer[offset] = c;
+		buffer[offset + 1] = c;
+		buffer[offset + 2] = ' ';
+	}
+
+	private void drawPiece(int square, ReturnPiece piece) {
+		int offset = offset(square);
+		String name = piece.pieceType.name();
+		buffer[offset] = Character.toLowerCase(name.charAt(0));
+		buffer[offset + 1] = name.charAt(1) == 'P' ? 'p' : name.charAt(1);
+	}
+
+	// Rank 8 is the first row of text.
+	private static int offset(int square) {
+		return (7 - (square >> 3)) * ROW_LENGTH + (square & 7) * 3;
+	}
+}
@@ -0,0 +1,306 @@
+package chess;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Keeps games in a memory-mapped file so they survive a restart. The file
+ * is a header and then a fixed-size slot per game; a slot holds two copies
+ * of the position (pieces, turn, *Moved flags, en passant square, clocks
+ * and move count) and the moves played, two bytes each.
+ *
+ * Each move writes the new position into the copy not in use, appends the
+ * move, and then flips the slot's first int to the new copy with a release
+ * store. A process that dies at any point leaves the slot on one whole
+ * position or the other; force() is only needed to survive the machine
+ * going down too. Restoring is reading one copy back through
+ * GameSession.setPosition, so after a restart each game costs a page-in of
+ * its slot, not a replay of its moves. The undo stack and the repetition
+ * history are not kept, so a restored game cannot take back moves made
+ * before the restart.
+ *
+ * Slots are SLOT_SIZE bytes, four to a page, so the file, mapped as one
+ * buffer, holds up to about two million games.
+ *
+ * Usage: java chess.CheckpointStore bench file [games]   (per-move cost and
+ *        restore time)
+ */
+final class CheckpointStore implements Closeable {
+
+	static final int MAGIC = 0x434B5031; // "CKP1"
+	static final int SLOT_SIZE = 1024;
+
+	// Slot layout: which copy is live (0 free, 1 or 2), then the two copies, then the moves.
+	private static final int LIVE = 0;
+	private static final int COPY = 8;
+	private static final int COPY_SIZE = 80;
+	private static final int HISTORY = COPY + 2 * COPY_SIZE;
+	static final int MAX_HISTORY = (SLOT_SIZE - HISTORY) / 2;
+	// Within a copy: a byte per square (PieceType ordinal + 1, 0 for empty), then these.
+	private static final int TURN = 64;
+	private static final int MOVED = 65;
+	private static final int EN_PASSANT = 66;
+	private static final int HALFMOVES = 68;
+	private static final int FULLMOVES = 72;
+	private static final int PLIES = 76;
+
+	private static final ReturnPiece.PieceType[] TYPES = ReturnPiece.PieceType.values();
+	private static final VarHandle INTS = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+
+	private final FileChannel channel;
+	private final MappedByteBuffer slots;
+	private final int count;
+	private final ReturnPiece.PieceType[] squares = new ReturnPiece.PieceType[64];
+
+	private CheckpointStore(FileChannel channel, MappedByteBuffer slots, int count) {
+		this.channel = channel;
+		this.slots = slots;
+		this.count = count;
+	}
+
+	/**
+	 * Opens the store in file, creating it or growing it to at least games
+	 * slots. Games already saved there are kept.
+	 */
+	static CheckpointStore open(Path file, int games) throws IOException {
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE,
+				StandardOpenOption.CREATE);
+		try {
+			int count = games;
+			if (channel.size() > 0) {
+				// Read, not mapped: mapping past the end would grow a file that is not ours.
+				ByteBuffer header = ByteBuffer.allocate(12);
+				if (channel.size() < SLOT_SIZE) {
+					throw new IOException(file + " is not a checkpoint file");
+				}
+				while (header.hasRemaining()) {
+					if (channel.read(header, header.position()) < 0) {
+						throw new IOException(file + " is not a checkpoint file");
+					}
+				}
+				if (header.getInt(0) != MAGIC || header.getInt(4) != SLOT_SIZE) {
+					throw new IOException(file + " is not a checkpoint file");
+				}
+				count = Math.max(games, header.getInt(8));
+			}
+			long size = (long) (count + 1) * SLOT_SIZE;
+			if (size > Integer.MAX_VALUE) {
+				throw new IOException("Too many games for one file: " + count);
+			}
+			MappedByteBuffer slots = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+			slots.order(ByteOrder.BIG_ENDIAN);
+			slots.putInt(0, MAGIC);
+			slots.putInt(4, SLOT_SIZE);
+			slots.putInt(8, count);
+			return new CheckpointStore(channel, slots, count);
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	int games() {
+		return count;
+	}
+
+	boolean inUse(int game) {
+		return live(base(game)) != 0;
+	}
+
+	/**
+	 * Saves session as a game with no moves yet, as at the start or after a
+	 * reset.
+	 */
+	void reset(int game, GameSession session) {
+		write(base(game), session, 0, MoveGenerator.INVALID);
+	}
+
+	/**
+	 * Saves session after move, as returned by GameSession.lastMove, was
+	 * played. Moves past MAX_HISTORY are counted but not kept.
+	 */
+	void played(int game, GameSession session, int move) {
+		int base = base(game);
+		int plies = (live(base) == 0 ? 0 : plies(base)) + 1;
+		if (plies <= MAX_HISTORY) {
+			slots.putShort(base + HISTORY + 2 * (plies - 1), (short) (move & 0x7FFF));
+		}
+		write(base, session, plies, move);
+	}
+
+	/**
+	 * Saves session after its last move was taken back.
+	 */
+	void takenBack(int game, GameSession session) {
+		int base = base(game);
+		write(base, session, Math.max(0, plies(base) - 1), MoveGenerator.INVALID);
+	}
+
+	void free(int game) {
+		INTS.setRelease(slots, base(game) + LIVE, 0);
+	}
+
+	/**
+	 * Sets session up at the game's saved position.
+	 *
+	 * @return false, leaving session alone, if nothing is saved for game
+	 */
+	boolean restore(int game, GameSession session) {
+		int base = base(game);
+		int live = live(base);
+		if (live == 0) {
+			return false;
+		}
+		int copy = base + COPY + (live - 1) * COPY_SIZE;
+		for (int square = 0; square < 64; square++) {
+			int type = slots.get(copy + square);
+			squares[square] = type == 0 ? null : TYPES[type - 1];
+		}
+		GameSession.Player turn = slots.get(copy + TURN) == 0 ? GameSession.Player.white : GameSession.Player.black;
+		session.setPosition(squares, turn, slots.get(copy + MOVED), slots.get(copy + EN_PASSANT),
+				slots.getInt(copy + HALFMOVES), slots.getInt(copy + FULLMOVES));
+		return true;
+	}
+
+	/**
+	 * Copies the game's moves, as many as were kept, into moves.
+	 *
+	 * @return the number of moves played, which may be more than were kept
+	 */
+	int moves(int game, int[] moves) {
+		int base = base(game);
+		if (live(base) == 0) {
+			return 0;
+		}
+		int plies = plies(base);
+		for (int i = 0; i < Math.min(plies, Math.min(MAX_HISTORY, moves.length)); i++) {
+			moves[i] = slots.getShort(base + HISTORY + 2 * i);
+		}
+		return plies;
+	}
+
+	/**
+	 * Writes the mapped pages out to the file.
+	 */
+	void force() {
+		slots.force();
+	}
+
+	@Override
+	public void close() throws IOException {
+		force();
+		channel.close();
+	}
+
+	private int base(int game) {
+		if (game < 0 || game >= count) {
+			throw new IllegalArgumentException("No slot for game " + game);
+		}
+		return (game + 1) * SLOT_SIZE;
+	}
+
+	private int live(int base) {
+		return (int) INTS.getAcquire(slots, base + LIVE);
+	}
+
+	private int plies(int base) {
+		return slots.getInt(base + COPY + (live(base) - 1) * COPY_SIZE + PLIES);
+	}
+
+	// Fills the copy not in use, then makes it the live one. After a move
+	// only the ranks it moved from and to can have changed (castling and en
+	// passant included), so the other six are copied over from the live copy.
+	private void write(int base, GameSession session, int plies, int move) {
+		int live = live(base);
+		int next = live == 1 ? 2 : 1;
+		int copy = base + COPY + (next - 1) * COPY_SIZE;
+		if (live == 0 || move == MoveGenerator.INVALID) {
+			writeRanks(copy, session, 0, 8);
+		} else {
+			slots.put(copy, slots, base + COPY + (live - 1) * COPY_SIZE, 64);
+			writeRanks(copy, session, MoveGenerator.from(move) >> 3, 1);
+			writeRanks(copy, session, MoveGenerator.to(move) >> 3, 1);
+		}
+		slots.put(copy + TURN, (byte) (session.getTurn() == GameSession.Player.white ? 0 : 1));
+		slots.put(copy + MOVED, (byte) session.getMovedBits());
+		slots.put(copy + EN_PASSANT, (byte) session.getEnPassantSquare());
+		slots.putInt(copy + HALFMOVES, session.getHalfmoveClock());
+		slots.putInt(copy + FULLMOVES, session.getFullmoveNumber());
+		slots.putInt(copy + PLIES, plies);
+		INTS.setRelease(slots, base + LIVE, next);
+	}
+
+	private void writeRanks(int copy, GameSession session, int rank, int ranks) {
+		for (int square = rank * 8; square < (rank + ranks) * 8; square++) {
+			ReturnPiece piece = session.pieceAt(square);
+			slots.put(copy + square, (byte) (piece == null ? 0 : piece.pieceType.ordinal() + 1));
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2 || !args[0].equals("bench")) {
+			System.err.println("Usage: java chess.CheckpointStore bench file [games]");
+			return;
+		}
+		Path file = Paths.get(args[1]);
+		int games = args.length > 2 ? Integer.parseInt(args[2]) : 100_000;
+		Files.deleteIfExists(file);
+		GameSession session = new GameSession();
+		String expected;
+
+		// Every game plays the scripted game, timing play alone and play plus checkpoint.
+		try (CheckpointStore store = open(file, games)) {
+			for (int round = 0; round < 3; round++) {
+				long playNanos = 0;
+				long saveNanos = 0;
+				long moves = 0;
+				for (int game = 0; game < games; game++) {
+					session.start();
+					store.reset(game, session);
+					for (String move : Benchmarks.SCRIPTED_GAME) {
+						long start = System.nanoTime();
+						session.play(move);
+						long played = System.nanoTime();
+						store.played(game, session, session.lastMove());
+						saveNanos += System.nanoTime() - played;
+						playNanos += played - start;
+						moves++;
+					}
+				}
+				System.out.printf("%d moves: play %.0f ns/move, checkpoint %.0f ns/move%n", moves,
+						(double) playNanos / moves, (double) saveNanos / moves);
+			}
+			expected = Fen.toFen(session);
+			long start = System.nanoTime();
+			store.force();
+			System.out.printf("force: %.3f s for %d MB%n", (System.nanoTime() - start) / 1e9,
+					(long) (games + 1) * SLOT_SIZE >> 20);
+		}
+
+		// As after a restart: open the file again and bring every game back.
+		for (int round = 0; round < 3; round++) {
+			long start = System.nanoTime();
+			int wrong = 0;
+			try (CheckpointStore store = open(file, games)) {
+				for (int game = 0; game < games; game++) {
+					if (!store.restore(game, session) || (game % 1000 == 0 && !Fen.toFen(session).equals(expected))) {
+						wrong++;
+					}
+				}
+			}
+			double seconds = (System.nanoTime() - start) / 1e9;
+			System.out.printf("restored %d games in %.3f s (%.0f ns/game), %d wrong%n", games, seconds,
+					seconds * 1e9 / games, wrong);
+		}
+	}
+}
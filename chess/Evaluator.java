@@ -0,0 +1,155 @@
+package chess;
+
+/**
+ * Static evaluation: material plus piece-square bonuses, in centipawns
+ * from the point of view of the player to move.
+ */
+final class Evaluator {
+
+	// Indexed by PieceType.ordinal(); kings are not counted as material.
+	static final int[] PIECE_VALUES = new int[ReturnPiece.PieceType.values().length];
+
+	// Piece-square tables from white's side, written rank 8 first so they
+	// read like a board diagram. Black uses the same tables mirrored.
+	private static final int[] PAWN_TABLE = {
+			0, 0, 0, 0, 0, 0, 0, 0,
+			50, 50, 50, 50, 50, 50, 50, 50,
+			10, 10, 20, 30, 30, 20, 10, 10,
+			5, 5, 10, 25, 25, 10, 5, 5,
+			0, 0, 0, 20, 20, 0, 0, 0,
+			5, -5, -10, 0, 0, -10, -5, 5,
+			5, 10, 10, -20, -20, 10, 10, 5,
+			0, 0, 0, 0, 0, 0, 0, 0 };
+	private static final int[] KNIGHT_TABLE = {
+			-50, -40, -30, -30, -30, -30, -40, -50,
+			-40, -20, 0, 0, 0, 0, -20, -40,
+			-30, 0, 10, 15, 15, 10, 0, -30,
+			-30, 5, 15, 20, 20, 15, 5, -30,
+			-30, 0, 15, 20, 20, 15, 0, -30,
+			-30, 5, 10, 15, 15, 10, 5, -30,
+			-40, -20, 0, 5, 5, 0, -20, -40,
+			-50, -40, -30, -30, -30, -30, -40, -50 };
+	private static final int[] BISHOP_TABLE = {
+			-20, -10, -10, -10, -10, -10, -10, -20,
+			-10, 0, 0, 0, 0, 0, 0, -10,
+			-10, 0, 5, 10, 10, 5, 0, -10,
+			-10, 5, 5, 10, 10, 5, 5, -10,
+			-10, 0, 10, 10, 10, 10, 0, -10,
+			-10, 10, 10, 10, 10, 10, 10, -10,
+			-10, 5, 0, 0, 0, 0, 5, -10,
+			-20, -10, -10, -10, -10, -10, -10, -20 };
+	private static final int[] ROOK_TABLE = {
+			0, 0, 0, 0, 0, 0, 0, 0,
+			5, 10, 10, 10, 10, 10, 10, 5,
+			-5, 0, 0, 0, 0, 0, 0, -5,
+			-5, 0, 0, 0, 0, 0, 0, -5,
+			-5, 0, 0, 0, 0, 0, 0, -5,
+			-5, 0, 0, 0, 0, 0, 0, -5,
+			-5, 0, 0, 0, 0, 0, 0, -5,
+			0, 0, 0, 5, 5, 0, 0, 0 };
+	private static final int[] QUEEN_TABLE = {
+			-20, -10, -10, -5, -5, -10, -10, -20,
+			-10, 0, 0, 0, 0, 0, 0, -10,
+			-10, 0, 5, 5, 5, 5, 0, -10,
+			-5, 0, 5, 5, 5, 5, 0, -5,
+			0, 0, 5, 5, 5, 5, 0, -5,
+			-10, 5, 5, 5, 5, 5, 0, -10,
+			-10, 0, 5, 0, 0, 0, 0, -10,
+			-20, -10, -10, -5, -5, -10, -10, -20 };
+	private static final int[] KING_TABLE = {
+			-30, -40, -40, -50, -50, -40, -40, -30,
+			-30, -40, -40, -50, -50, -40, -40, -30,
+			-30, -40, -40, -50, -50, -40, -40, -30,
+			-30, -40, -40, -50, -50, -40, -40, -30,
+			-20, -30, -30, -40, -40, -30, -30, -20,
+			-10, -20, -20, -20, -20, -20, -20, -10,
+			20, 20, 0, 0, 0, 0, 20, 20,
+			20, 30, 10, 0, 0, 10, 30, 20 };
+
+	// Indexed by PieceType.ordinal().
+	private static final int[][] TABLES = new int[ReturnPiece.PieceType.values().length][];
+
+	static {
+		for (ReturnPiece.PieceType type : ReturnPiece.PieceType.values()) {
+			int value;
+			int[] table;
+			switch (type.name().charAt(1)) {
+				case 'P':
+					value = 100;
+					table = PAWN_TABLE;
+					break;
+				case 'N':
+					value = 320;
+					table = KNIGHT_TABLE;
+					break;
+				case 'B':
+					value = 330;
+					table = BISHOP_TABLE;
+					break;
+				case 'R':
+					value = 500;
+					table = ROOK_TABLE;
+					break;
+				case 'Q':
+					value = 900;
+					table = QUEEN_TABLE;
+					break;
+				default:
+					value = 0;
+					table = KING_TABLE;
+					break;
+			}
+			PIECE_VALUES[type.ordinal()] = value;
+			TABLES[type.ordinal()] = table;
+		}
+	}
+
+	private Evaluator() {
+	}
+
+	/**
+	 * Scores the position for the player to move; positive is good for them.
+	 */
+	static int evaluate(GameSession session) {
+		NnueAccumulator network = session.network();
+		if (network != null) {
+			return network.evaluate(session.getTurn());
+		}
+		return evaluateTables(session);
+	}
+
+	/**
+	 * Scores the position by the tables alone, ignoring any network.
+	 */
+	static int evaluateTables(GameSession session) {
+		int score = 0;
+		for (int square = 0; square < 64; square++) {
+			ReturnPiece piece = session.pieceAt(square);
+			if (piece == null) {
+				continue;
+			}
+			int type = piece.pieceType.ordinal();
+			if (piece.pieceType.name().charAt(0) == 'W') {
+				// Tables start at rank 8, board squares at rank 1.
+				score += PIECE_VALUES[type] + TABLES[type][square ^ 56];
+			} else {
+				score -= PIECE_VALUES[type] + TABLES[type][square];
+			}
+		}
+		if (session.getTurn() == GameSession.Player.white) {
+			return score;
+		}
+		return -score;
+	}
+
+	/**
+	 * Returns what a piece of type on square adds for its owner.
+	 */
+	static int pieceSquareValue(ReturnPiece.PieceType type, int square) {
+		int t = type.ordinal();
+		if (type.name().charAt(0) == 'W') {
+			return PIECE_VALUES[t] + TABLES[t][square ^ 56];
+		}
+		return PIECE_VALUES[t] + TABLES[t][square];
+	}
+}
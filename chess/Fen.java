@@ -0,0 +1,286 @@
+package chess;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/**
+ * Reads and writes positions in Forsyth-Edwards Notation, e.g. the start:
+ * "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1".
+ *
+ * A Fen reader parses in a single pass over the text into a square array
+ * it keeps, then hands the whole position to GameSession.setPosition, so
+ * loading position after position into one session allocates nothing.
+ * Castling rights map onto the six *Moved flags: a side with no rights has
+ * its king marked as moved, and a missing K or Q marks that rook as moved.
+ *
+ * Usage: java chess.Fen file   (loads every line, reports positions/s)
+ */
+final class Fen {
+
+	static final String START = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+
+	private static final ReturnPiece.PieceType[] BY_LETTER = new ReturnPiece.PieceType[128];
+
+	static {
+		for (ReturnPiece.PieceType type : ReturnPiece.PieceType.values()) {
+			char letter = type.name().charAt(1);
+			if (type.name().charAt(0) == 'B') {
+				letter = Character.toLowerCase(letter);
+			}
+			BY_LETTER[letter] = type;
+		}
+	}
+
+	private final ReturnPiece.PieceType[] squares = new ReturnPiece.PieceType[64];
+
+	/**
+	 * Sets session up at the position in fen. The move counters may be left
+	 * off, as in EPD.
+	 *
+	 * @throws IllegalArgumentException if fen is not a valid position
+	 */
+	void load(GameSession session, CharSequence fen) {
+		int length = fen.length();
+		int i = 0;
+
+		// Placement, from a8 along each rank down to h1.
+		int rank = 7;
+		int file = 0;
+		int whiteKings = 0;
+		int blackKings = 0;
+		for (int s = 0; s < 64; s++) {
+			squares[s] = null;
+		}
+		for (; i < length; i++) {
+			char c = fen.charAt(i);
+			if (c == ' ') {
+				break;
+			}
+			if (c == '/') {
+				if (file != 8 || rank == 0) {
+					throw invalid(fen, "rank " + (rank + 1) + " does not have 8 squares");
+				}
+				rank--;
+				file = 0;
+			} else if (c >= '1' && c <= '8') {
+				file += c - '0';
+			} else {
+				ReturnPiece.PieceType type = c < 128 ? BY_LETTER[c] : null;
+				if (type == null || file > 7) {
+					throw invalid(fen, "bad piece placement at '" + c + "'");
+				}
+				if (type == ReturnPiece.PieceType.WK) {
+					whiteKings++;
+				} else if (type == ReturnPiece.PieceType.BK) {
+					blackKings++;
+				}
+				squares[rank * 8 + file] = type;
+				file++;
+			}
+		}
+		if (rank != 0 || file != 8) {
+			throw invalid(fen, "the board does not have 8 ranks of 8 squares");
+		}
+		if (whiteKings != 1 || blackKings != 1) {
+			throw invalid(fen, "each side needs exactly one king");
+		}
+
+		// Side to move.
+		i = skipSpace(fen, i);
+		GameSession.Player turn;
+		if (i < length && fen.charAt(i) == 'w') {
+			turn = GameSession.Player.white;
+		} else if (i < length && fen.charAt(i) == 'b') {
+			turn = GameSession.Player.black;
+		} else {
+			throw invalid(fen, "side to move must be w or b");
+		}
+		i++;
+
+		// Castling rights; everything starts as moved and is cleared per letter.
+		i = skipSpace(fen, i);
+		int moved = (1 << Zobrist.WHITE_KING) | (1 << Zobrist.BLACK_KING) | (1 << Zobrist.WHITE_KINGSIDE_ROOK)
+				| (1 << Zobrist.WHITE_QUEENSIDE_ROOK) | (1 << Zobrist.BLACK_KINGSIDE_ROOK)
+				| (1 << Zobrist.BLACK_QUEENSIDE_ROOK);
+		if (i < length && fen.charAt(i) == '-') {
+			i++;
+		} else {
+			for (; i < length && fen.charAt(i) != ' '; i++) {
+				switch (fen.charAt(i)) {
+					case 'K':
+						moved &= ~((1 << Zobrist.WHITE_KING) | (1 << Zobrist.WHITE_KINGSIDE_ROOK));
+						break;
+					case 'Q':
+						moved &= ~((1 << Zobrist.WHITE_KING) | (1 << Zobrist.WHITE_QUEENSIDE_ROOK));
+						break;
+					case 'k':
+						moved &= ~((1 << Zobrist.BLACK_KING) | (1 << Zobrist.BLACK_KINGSIDE_ROOK));
+						break;
+					case 'q':
+						moved &= ~((1 << Zobrist.BLACK_KING) | (1 << Zobrist.BLACK_QUEENSIDE_ROOK));
+						break;
+					default:
+						throw invalid(fen, "bad castling rights");
+				}
+			}
+		}
+
+		// En passant square.
+		i = skipSpace(fen, i);
+		int enPassant = -1;
+		if (i < length && fen.charAt(i) == '-') {
+			i++;
+		} else {
+			enPassant = MoveGenerator.parseSquare(fen, i, length);
+			if (enPassant < 0 || (enPassant >> 3 != 2 && enPassant >> 3 != 5)) {
+				throw invalid(fen, "bad en passant square");
+			}
+			i += 2;
+		}
+
+		// Optional move counters.
+		int halfmoves = 0;
+		int fullmoves = 1;
+		i = skipSpace(fen, i);
+		if (i < length) {
+			int start = i;
+			halfmoves = 0;
+			for (; i < length && fen.charAt(i) >= '0' && fen.charAt(i) <= '9'; i++) {
+				halfmoves = halfmoves * 10 + (fen.charAt(i) - '0');
+			}
+			if (i == start) {
+				throw invalid(fen, "bad halfmove clock");
+			}
+			i = skipSpace(fen, i);
+			if (i < length) {
+				start = i;
+				fullmoves = 0;
+				for (; i < length && fen.charAt(i) >= '0' && fen.charAt(i) <= '9'; i++) {
+					fullmoves = fullmoves * 10 + (fen.charAt(i) - '0');
+				}
+				if (i == start || fullmoves == 0) {
+					throw invalid(fen, "bad fullmove number");
+				}
+			}
+		}
+
+		session.setPosition(squares, turn, moved, enPassant, halfmoves, fullmoves);
+	}
+
+	/**
+	 * Writes the session's position as FEN.
+	 */
+	static String toFen(GameSession session) {
+		return appendTo(new StringBuilder(90), session).toString();
+	}
+
+	static StringBuilder appendTo(StringBuilder sb, GameSession session) {
+		for (int rank = 7; rank >= 0; rank--) {
+			int empty = 0;
+			for (int file = 0; file < 8; file++) {
+				ReturnPiece p = session.pieceAt(rank * 8 + file);
+				if (p == null) {
+					empty++;
+					continue;
+				}
+				if (empty > 0) {
+					sb.append((char) ('0' + empty));
+					empty = 0;
+				}
+				String name = p.pieceType.name();
+				sb.append(name.charAt(0) == 'W' ? name.charAt(1) : Character.toLowerCase(name.charAt(1)));
+			}
+			if (empty > 0) {
+				sb.append((char) ('0' + empty));
+			}
+			if (rank > 0) {
+				sb.append('/');
+			}
+		}
+
+		sb.append(session.getTurn() == GameSession.Player.white ? " w " : " b ");
+
+		// A right needs the king and that rook unmoved, and both still at home.
+		int moved = session.getMovedBits();
+		int length = sb.length();
+		if (canCastle(session, moved, Zobrist.WHITE_KING, Zobrist.WHITE_KINGSIDE_ROOK, 4, 7, 'W')) {
+			sb.append('K');
+		}
+		if (canCastle(session, moved, Zobrist.WHITE_KING, Zobrist.WHITE_QUEENSIDE_ROOK, 4, 0, 'W')) {
+			sb.append('Q');
+		}
+		if (canCastle(session, moved, Zobrist.BLACK_KING, Zobrist.BLACK_KINGSIDE_ROOK, 60, 63, 'B')) {
+			sb.append('k');
+		}
+		if (canCastle(session, moved, Zobrist.BLACK_KING, Zobrist.BLACK_QUEENSIDE_ROOK, 60, 56, 'B')) {
+			sb.append('q');
+		}
+		if (sb.length() == length) {
+			sb.append('-');
+		}
+
+		int enPassant = session.getEnPassantSquare();
+		sb.append(' ');
+		if (enPassant < 0) {
+			sb.append('-');
+		} else {
+			sb.append((char) ('a' + (enPassant & 7))).append((char) ('1' + (enPassant >> 3)));
+		}
+		return sb.append(' ').append(session.getHalfmoveClock()).append(' ').append(session.getFullmoveNumber());
+	}
+
+	static boolean canCastle(GameSession session, int moved, int kingFlag, int rookFlag, int kingSquare,
+			int rookSquare, char color) {
+		if ((moved & ((1 << kingFlag) | (1 << rookFlag))) != 0) {
+			return false;
+		}
+		ReturnPiece king = session.pieceAt(kingSquare);
+		ReturnPiece rook = session.pieceAt(rookSquare);
+		return king != null && rook != null && king.pieceType.name().equals(color + "K")
+				&& rook.pieceType.name().equals(color + "R");
+	}
+
+	private static int skipSpace(CharSequence fen, int i) {
+		while (i < fen.length() && fen.charAt(i) == ' ') {
+			i++;
+		}
+		return i;
+	}
+
+	private static IllegalArgumentException invalid(CharSequence fen, String reason) {
+		return new IllegalArgumentException("Invalid FEN (" + reason + "): " + fen);
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.err.println("Usage: java chess.Fen file");
+			return;
+		}
+		GameSession session = new GameSession();
+		Fen fen = new Fen();
+		long positions = 0;
+		long rejected = 0;
+		long start = System.nanoTime();
+		try (BufferedReader in = Files.newBufferedReader(Paths.get(args[0]), StandardCharsets.UTF_8)) {
+			String line;
+			while ((line = in.readLine()) != null) {
+				if (line.isEmpty()) {
+					continue;
+				}
+				try {
+					fen.load(session, line);
+					positions++;
+				} catch (IllegalArgumentException e) {
+					rejected++;
+					System.err.println(e.getMessage());
+				}
+			}
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.out.printf("%d positions loaded, %d rejected in %.3f s: %.0f positions/s%n", positions, rejected,
+				seconds, positions / seconds);
+	}
+}
@@ -0,0 +1,191 @@
+package chess;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streams the games of a file written by GameRecordWriter, straight from a
+ * memory-mapped view of it. Moves are handed to GameSession.play(int) as
+ * they are stored, so replaying parses no text and allocates nothing per
+ * move.
+ *
+ * Usage: java chess.GameRecordReader file.cgr [text-file...]
+ *        (replays the records, and the text games too for comparison)
+ */
+final class GameRecordReader implements Closeable {
+
+	private static final ReturnPlay.Message[] MESSAGES = ReturnPlay.Message.values();
+
+	private final FileChannel channel;
+	private final MappedByteBuffer data;
+	private int position = GameRecordWriter.MAGIC_SIZE; // The first game header.
+	private int movesOffset;
+	private int moveCount;
+	private ReturnPlay.Message result;
+
+	GameRecordReader(Path file) throws IOException {
+		channel = FileChannel.open(file, StandardOpenOption.READ);
+		try {
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException(file + " is over 2 GB; split it into smaller record files");
+			}
+			data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			data.order(ByteOrder.BIG_ENDIAN);
+			if (data.capacity() < GameRecordWriter.MAGIC_SIZE || data.getInt(0) != GameRecordWriter.MAGIC) {
+				throw new IOException(file + " is not a game record file");
+			}
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Moves to the next game.
+	 *
+	 * @return false at the end of the file
+	 */
+	boolean next() throws IOException {
+		if (position + GameRecordWriter.HEADER_SIZE > data.capacity()) {
+			return false;
+		}
+		moveCount = data.getShort(position) & 0xFFFF;
+		int code = data.get(position + 2) & 0xFF;
+		result = code == 0 ? null : MESSAGES[code - 1];
+		movesOffset = position + GameRecordWriter.HEADER_SIZE;
+		position = movesOffset + 2 * moveCount;
+		if (position > data.capacity()) {
+			throw new IOException("Game record cut short");
+		}
+		return true;
+	}
+
+	int moveCount() {
+		return moveCount;
+	}
+
+	/**
+	 * Returns the result stored for the current game, or null.
+	 */
+	ReturnPlay.Message result() {
+		return result;
+	}
+
+	/**
+	 * Returns move i of the current game in MoveGenerator's encoding.
+	 */
+	int move(int i) {
+		return data.getShort(movesOffset + 2 * i) & 0x7FFF;
+	}
+
+	/**
+	 * Plays the current game on session, from the starting position.
+	 *
+	 * @return the message of the last move, or ILLEGAL_MOVE at the first move
+	 *         the session rejects
+	 */
+	ReturnPlay.Message replay(GameSession session) {
+		session.start();
+		ReturnPlay.Message message = null;
+		for (int i = 0; i < moveCount; i++) {
+			message = session.play(move(i)).message;
+			if (message == ReturnPlay.Message.ILLEGAL_MOVE) {
+				break;
+			}
+		}
+		return message;
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.err.println("Usage: java chess.GameRecordReader file.cgr [text-file...]");
+			return;
+		}
+		GameSession session = new GameSession();
+		// Once untimed, so both replays below run on warmed-up code.
+		replayRecords(Paths.get(args[0]), session);
+
+		long start = System.nanoTime();
+		long[] counts = replayRecords(Paths.get(args[0]), session);
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.out.printf("records: %d games, %d moves, %d mismatched results in %.3f s, %.0f moves/s, %d bytes%n",
+				counts[0], counts[1], counts[2], seconds, counts[1] / seconds, Files.size(Paths.get(args[0])));
+
+		if (args.length > 1) {
+			long textBytes = 0;
+			start = System.nanoTime();
+			long games = 0;
+			long moves = 0;
+			for (int f = 1; f < args.length; f++) {
+				Path file = Paths.get(args[f]);
+				textBytes += Files.size(file);
+				try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+					List<String> game = new ArrayList<>();
+					String line;
+					while ((line = in.readLine()) != null) {
+						String trimmed = line.trim();
+						if (trimmed.equals("quit")) {
+							break;
+						}
+						if (trimmed.isEmpty() || trimmed.equals("reset")) {
+							if (!game.isEmpty()) {
+								session.start();
+								moves += BatchReplay.replay(session, args[f], (int) ++games, game).moves;
+								game.clear();
+							}
+						} else {
+							game.add(trimmed);
+						}
+					}
+					if (!game.isEmpty()) {
+						session.start();
+						moves += BatchReplay.replay(session, args[f], (int) ++games, game).moves;
+					}
+				}
+			}
+			double textSeconds = (System.nanoTime() - start) / 1e9;
+			System.out.printf("text:    %d games, %d moves in %.3f s, %.0f moves/s, %d bytes%n", games, moves,
+					textSeconds, moves / textSeconds, textBytes);
+			System.out.printf("records are %.1fx smaller and replay %.1fx faster%n",
+					(double) textBytes / Files.size(Paths.get(args[0])), textSeconds / seconds);
+		}
+	}
+
+	// Returns games, moves and games whose replayed result differs from the stored one.
+	private static long[] replayRecords(Path file, GameSession session) throws IOException {
+		long[] counts = new long[3];
+		try (GameRecordReader reader = new GameRecordReader(file)) {
+			while (reader.next()) {
+				ReturnPlay.Message message = reader.replay(session);
+				if (message == ReturnPlay.Message.CHECK) {
+					message = null;
+				}
+				ReturnPlay.Message stored = reader.result();
+				boolean resigned = stored == ReturnPlay.Message.RESIGN_BLACK_WINS
+						|| stored == ReturnPlay.Message.RESIGN_WHITE_WINS;
+				if (message != stored && !resigned) {
+					counts[2]++;
+				}
+				counts[0]++;
+				counts[1] += reader.moveCount();
+			}
+		}
+		return counts;
+	}
+}
@@ -0,0 +1,176 @@
+package chess;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Appends finished games to a binary game record file.
+ *
+ * The file starts with the 4-byte magic "CGR1". Each game is then a 4-byte
+ * header, the move count as an unsigned short and the result as one byte
+ * (ReturnPlay.Message ordinal + 1, or 0 for no result) plus a spare byte,
+ * followed by one unsigned short per move: from square in bits 0-5, to
+ * square in bits 6-11 and promotion in bits 12-14, the same bits as
+ * MoveGenerator's encoding. All values are big-endian. A game of 80 plies
+ * takes 164 bytes against about 480 as text.
+ *
+ * Writes go through one buffer and reach the file a buffer at a time.
+ *
+ * Usage: java chess.GameRecordWriter out.cgr file...
+ *        (converts game files in the BatchReplay format)
+ */
+final class GameRecordWriter implements Closeable {
+
+	static final int MAGIC = 0x43475231; // "CGR1"
+	static final int MAGIC_SIZE = Integer.BYTES;
+	static final int HEADER_SIZE = 4; // Per game, after the magic.
+	static final int MAX_MOVES = 0xFFFF;
+
+	private final FileChannel channel;
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024).order(ByteOrder.BIG_ENDIAN);
+
+	/**
+	 * Opens file for appending, creating it with its magic if needed.
+	 */
+	GameRecordWriter(Path file) throws IOException {
+		channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.APPEND);
+		if (channel.size() == 0) {
+			buffer.putInt(MAGIC); // MAGIC_SIZE bytes.
+		}
+	}
+
+	/**
+	 * Appends one game.
+	 *
+	 * @param moves encoded moves as played, first count used
+	 * @param result how the game ended, or null
+	 */
+	void write(int[] moves, int count, ReturnPlay.Message result) throws IOException {
+		if (count > MAX_MOVES) {
+			throw new IllegalArgumentException("Too many moves for one record: " + count);
+		}
+		if (buffer.remaining() < HEADER_SIZE + 2 * count) {
+			flush();
+		}
+		if (buffer.remaining() < HEADER_SIZE + 2 * count) { // Longer than the whole buffer.
+			ByteBuffer big = ByteBuffer.allocate(HEADER_SIZE + 2 * count).order(ByteOrder.BIG_ENDIAN);
+			put(big, moves, count, result);
+			big.flip();
+			writeFully(big);
+			return;
+		}
+		put(buffer, moves, count, result);
+	}
+
+	private static void put(ByteBuffer out, int[] moves, int count, ReturnPlay.Message result) {
+		out.putShort((short) count);
+		out.put((byte) (result == null ? 0 : result.ordinal() + 1));
+		out.put((byte) 0);
+		for (int i = 0; i < count; i++) {
+			out.putShort((short) (moves[i] & 0x7FFF));
+		}
+	}
+
+	void flush() throws IOException {
+		buffer.flip();
+		writeFully(buffer);
+		buffer.clear();
+	}
+
+	private void writeFully(ByteBuffer data) throws IOException {
+		while (data.hasRemaining()) {
+			channel.write(data);
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			flush();
+		} finally {
+			channel.close();
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.err.println("Usage: java chess.GameRecordWriter out.cgr file...");
+			return;
+		}
+		long start = System.nanoTime();
+		long games = 0;
+		long moves = 0;
+		long textBytes = 0;
+		GameSession session = new GameSession();
+		int[] played = new int[256];
+		try (GameRecordWriter writer = new GameRecordWriter(Paths.get(args[0]))) {
+			for (int f = 1; f < args.length; f++) {
+				Path file = Paths.get(args[f]);
+				textBytes += Files.size(file);
+				try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+					session.start();
+					int count = 0;
+					ReturnPlay.Message result = null;
+					boolean over = false;
+					String line;
+					while ((line = in.readLine()) != null) {
+						String trimmed = line.trim();
+						if (trimmed.equals("quit")) {
+							break;
+						}
+						if (trimmed.isEmpty() || trimmed.equals("reset")) {
+							if (count > 0 || result != null) {
+								writer.write(played, count, result);
+								games++;
+								moves += count;
+							}
+							session.start();
+							count = 0;
+							result = null;
+							over = false;
+							continue;
+						}
+						if (over) {
+							continue;
+						}
+						int move = MoveGenerator.parse(trimmed);
+						ReturnPlay.Message message = session.play(move).message;
+						if (message == ReturnPlay.Message.ILLEGAL_MOVE) {
+							continue;
+						}
+						if ((move & MoveGenerator.RESIGN) == 0) {
+							if (count == played.length) {
+								played = Arrays.copyOf(played, count * 2);
+							}
+							played[count++] = move;
+						}
+						if (message != null && message != ReturnPlay.Message.CHECK) {
+							result = message;
+							over = true;
+						}
+					}
+					if (count > 0 || result != null) {
+						writer.write(played, count, result);
+						games++;
+						moves += count;
+					}
+				}
+			}
+		}
+		long recordBytes = Files.size(Paths.get(args[0]));
+		System.out.printf("%d games, %d moves in %.3f s: %d bytes of text, %d bytes of records (%.1fx smaller)%n",
+				games, moves, (System.nanoTime() - start) / 1e9, textBytes, recordBytes,
+				(double) textBytes / Math.max(1, recordBytes));
+	}
+}
@@ -0,0 +1,123 @@
+package chess;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Hosts many games over TCP, one GameSession per connection.
+ *
+ * A client sends the same lines PlayChess reads: moves such as "e2 e4",
+ * "resign", a move followed by "draw?", "takeback", "reset" and "quit".
+ * Every line but "quit" is answered the way PlayChess prints it: "reset"
+ * with a single blank line, anything else with the message if there is
+ * one, then the board, which always ends with the file labels line and a
+ * blank line.
+ *
+ * Each connection is served by its own thread. On a JVM with virtual
+ * threads those are virtual threads, so tens of thousands of idle games
+ * cost little; elsewhere a cached pool of platform threads is used.
+ *
+ * Usage: java chess.GameServer [-port N] [-bind ADDRESS]
+ */
+public class GameServer {
+
+	static final int DEFAULT_PORT = 5555;
+
+	/**
+	 * Returns an executor that starts one virtual thread per task when the
+	 * JVM has them, and a cached thread pool when it does not.
+	 */
+	static ExecutorService threadPerTaskExecutor() {
+		try {
+			Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) factory.invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return Executors.newCachedThreadPool();
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		int port = DEFAULT_PORT;
+		InetAddress bind = InetAddress.getLoopbackAddress();
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-port") && i + 1 < args.length) {
+				port = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-bind") && i + 1 < args.length) {
+				bind = InetAddress.getByName(args[++i]);
+			}
+		}
+
+		ExecutorService executor = threadPerTaskExecutor();
+		try (ServerSocket server = new ServerSocket(port, 4096, bind)) {
+			System.out.println("Serving games on " + server.getLocalSocketAddress());
+			while (true) {
+				Socket socket = server.accept();
+				executor.execute(() -> serve(socket));
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Plays one game for one connection until the client quits or hangs up.
+	 */
+	static void serve(Socket socket) {
+		try (Socket s = socket;
+				BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+				Writer out = new BufferedWriter(new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8))) {
+			s.setTcpNoDelay(true);
+			GameSession session = new GameSession();
+			BoardRenderer renderer = new BoardRenderer();
+			PlayDelta delta = new PlayDelta();
+			renderer.render(session.getReturnPlay().piecesOnBoard);
+
+			String line;
+			while ((line = in.readLine()) != null) {
+				line = line.trim();
+				if (line.equals("quit")) {
+					break;
+				}
+				if (line.equals("reset")) {
+					session.start();
+					renderer.render(session.getReturnPlay().piecesOnBoard);
+					out.write('\n');
+					out.flush();
+					continue;
+				}
+				ReturnPlay res;
+				if (line.equals("takeback")) {
+					res = session.takeback();
+				} else {
+					res = session.play(line);
+				}
+
+				if (res.message != null) {
+					out.write("\n" + res.message + "\n");
+				}
+				out.write('\n');
+				if (session.lastDelta(delta)) {
+					renderer.apply(delta);
+				} else {
+					renderer.render(res.piecesOnBoard);
+				}
+				renderer.writeTo(out);
+				out.write('\n');
+				out.flush();
+			}
+		} catch (IOException e) {
+			// The client went away; nothing to clean up beyond the socket.
+		}
+	}
+}
@@ -0,0 +1,1391 @@
+package chess;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import chess.ReturnPiece.PieceFile;
+
+import java.lang.Math;
+
+/**
+ * One game of chess: the board, whose turn it is and the castling rights.
+ * Every session owns its own state, so any number of games can run side by
+ * side in the same JVM. play and start lock on the session, so a single
+ * game may also be shared between threads.
+ */
+public class GameSession {
+
+	enum Player {
+		white, black
+	}
+
+	// Shared copy of PieceFile.values(), which allocates a new array on every call.
+	private static final ReturnPiece.PieceFile[] FILES = ReturnPiece.PieceFile.values();
+
+	private Player turn;
+	private ReturnPlay rp;
+	private boolean whiteKingMoved;
+	private boolean blackKingMoved;
+	private boolean whiteKingsideRookMoved;
+	private boolean whiteQueensideRookMoved;
+	private boolean blackKingsideRookMoved;
+	private boolean blackQueensideRookMoved;
+	// Square-indexed view of rp.piecesOnBoard so lookups don't scan the list.
+	// Index is (rank - 1) * 8 + file, so a1 = 0, h1 = 7, a8 = 56, h8 = 63.
+	private final ReturnPiece[] board = new ReturnPiece[64];
+	// Squares attacked by each side, kept in step with the board.
+	private final AttackMap attacks;
+	// Where each side's king stands, indexed by AttackMap.WHITE/BLACK, or -1.
+	private final int[] kingSquares = { -1, -1 };
+	// Square skipped by a pawn's two-step move on the last turn, or -1.
+	private int enPassantSquare = -1;
+	// Zobrist key of the current position, kept up to date move by move.
+	private long zobristKey;
+	// Keys of every position so far in this game, oldest first.
+	private long[] keyHistory = new long[128];
+	private int historySize;
+	// Half-moves since the last capture or pawn move, for the fifty-move rule.
+	private int halfmoveClock;
+	// Half-moves played before the starting position, when set up from FEN.
+	private int startPly;
+
+	// Undo stack, one slot per move made, so a move can be taken back in
+	// constant time. Kept as parallel arrays so making a move allocates nothing.
+	private static final int UNDO_PROMOTED = 1;
+	private static final int UNDO_CASTLED = 2;
+	private int undoSize;
+	private int[] undoFrom = new int[128];
+	private int[] undoTo = new int[128];
+	private ReturnPiece[] undoCaptured = new ReturnPiece[128];
+	private int[] undoFlags = new int[128];
+	private int[] undoCastling = new int[128];
+	private int[] undoEnPassant = new int[128];
+	private int[] undoHalfmoveClock = new int[128];
+	private long[] undoKey = new long[128];
+	// Undo slot of the move made by the last call to play, or -1 if that
+	// call made no move.
+	private int lastPlayed = -1;
+	// In adjudication mode, endings the bitbase covers end at once.
+	private Bitbase adjudicator;
+	// Hidden-layer sums of the evaluation network, when one is set.
+	private NnueAccumulator network;
+
+	// Measurements of the play call in progress, kept only when Metrics.ENABLED.
+	private int findPieceAtCalls;
+	private int attackQueries;
+	private ReturnPiece.PieceType validatedPiece;
+	private long validateStart;
+	private long validateNanos;
+	private long promotionNanos;
+	private long attackCheckNanos;
+
+	/**
+	 * Creates a session that is already set up at the starting position.
+	 */
+	public GameSession() {
+		attacks = new AttackMap(board);
+		start();
+	}
+
+	/**
+	 * Creates an independent copy of another session, with its own pieces.
+	 * Moves made before the copy cannot be taken back on it.
+	 */
+	GameSession(GameSession other) {
+		turn = other.turn;
+		rp = new ReturnPlay();
+		rp.message = other.rp.message;
+		rp.piecesOnBoard = new ArrayList<>();
+		for (ReturnPiece p : other.rp.piecesOnBoard) {
+			ReturnPiece copy = new ReturnPiece();
+			copy.pieceType = p.pieceType;
+			copy.pieceFile = p.pieceFile;
+			copy.pieceRank = p.pieceRank;
+			rp.piecesOnBoard.add(copy);
+			board[squareIndex(p.pieceFile, p.pieceRank)] = copy;
+		}
+		attacks = new AttackMap(board, other.attacks);
+		kingSquares[AttackMap.WHITE] = other.kingSquares[AttackMap.WHITE];
+		kingSquares[AttackMap.BLACK] = other.kingSquares[AttackMap.BLACK];
+		whiteKingMoved = other.whiteKingMoved;
+		blackKingMoved = other.blackKingMoved;
+		whiteKingsideRookMoved = other.whiteKingsideRookMoved;
+		whiteQueensideRookMoved = other.whiteQueensideRookMoved;
+		blackKingsideRookMoved = other.blackKingsideRookMoved;
+		blackQueensideRookMoved = other.blackQueensideRookMoved;
+		enPassantSquare = other.enPassantSquare;
+		zobristKey = other.zobristKey;
+		keyHistory = Arrays.copyOf(other.keyHistory, other.keyHistory.length);
+		historySize = other.historySize;
+		halfmoveClock = other.halfmoveClock;
+		startPly = other.startPly + other.undoSize;
+		if (other.network != null) {
+			network = new NnueAccumulator(other.network);
+		}
+	}
+
+	/**
+	 * Plays the next move for whichever player has the turn.
+	 *
+	 * @param move String for next move, e.g. "a2 a3"
+	 *
+	 * @return A ReturnPlay instance that contains the result of the move.
+	 */
+	public synchronized ReturnPlay play(String move) {
+		if (!Metrics.ENABLED) {
+			return play(MoveGenerator.parse(move));
+		}
+		long start = System.nanoTime();
+		int encoded = MoveGenerator.parse(move);
+		Metrics.record(Metrics.Phase.PARSE, System.nanoTime() - start);
+		return play(encoded);
+	}
+
+	/**
+	 * Plays the next move, already encoded by MoveGenerator.parse or taken
+	 * from the move generator, for whichever player has the turn.
+	 *
+	 * @param move Encoded move, MoveGenerator.INVALID or MoveGenerator.RESIGN
+	 *
+	 * @return A ReturnPlay instance that contains the result of the move.
+	 */
+	public synchronized ReturnPlay play(int move) {
+		if (!Metrics.ENABLED) {
+			return playMove(move);
+		}
+		MoveEvent moveEvent = new MoveEvent();
+		IllegalMoveEvent illegalEvent = new IllegalMoveEvent();
+		moveEvent.begin();
+		illegalEvent.begin();
+		findPieceAtCalls = 0;
+		attackQueries = 0;
+		validatedPiece = null;
+		validateNanos = -1;
+		promotionNanos = -1;
+		attackCheckNanos = -1;
+		long start = System.nanoTime();
+
+		ReturnPlay result = playMove(move);
+
+		long end = System.nanoTime();
+		if (validatedPiece != null) {
+			if (validateNanos < 0) { // Rejected part way through validation.
+				validateNanos = end - validateStart;
+			}
+			Metrics.record(Metrics.validation(validatedPiece.name().charAt(1)), validateNanos);
+		}
+		if (promotionNanos >= 0) {
+			Metrics.record(Metrics.Phase.PROMOTION, promotionNanos);
+		}
+		if (attackCheckNanos >= 0) {
+			Metrics.record(Metrics.Phase.ATTACK_CHECK, attackCheckNanos);
+		}
+		Metrics.record(Metrics.Phase.PLAY, end - start);
+		boolean legal = result.message != ReturnPlay.Message.ILLEGAL_MOVE;
+		Metrics.recordMove(legal, findPieceAtCalls, attackQueries);
+
+		String text;
+		if (move == MoveGenerator.INVALID) {
+			text = "invalid";
+		} else if ((move & MoveGenerator.RESIGN) != 0) {
+			text = "resign";
+		} else {
+			text = MoveGenerator.toText(move);
+		}
+		String piece = validatedPiece == null ? null : validatedPiece.name();
+		if (legal && moveEvent.shouldCommit()) {
+			moveEvent.move = text;
+			moveEvent.piece = piece;
+			moveEvent.result = result.message == null ? "" : result.message.name();
+			moveEvent.findPieceAtCalls = findPieceAtCalls;
+			moveEvent.attackQueries = attackQueries;
+			moveEvent.commit();
+		} else if (!legal && illegalEvent.shouldCommit()) {
+			illegalEvent.move = text;
+			illegalEvent.piece = piece;
+			illegalEvent.findPieceAtCalls = findPieceAtCalls;
+			illegalEvent.commit();
+		}
+		return result;
+	}
+
+	private ReturnPlay playMove(int move) {
+		lastPlayed = -1;
+		if (move == MoveGenerator.INVALID) {
+			rp.message = ReturnPlay.Message.ILLEGAL_MOVE;
+			return rp;
+		}
+
+		if ((move & MoveGenerator.RESIGN) != 0) {
+			if (turn == Player.white) {
+				rp.message = ReturnPlay.Message.RESIGN_BLACK_WINS;
+			} else {
+				rp.message = ReturnPlay.Message.RESIGN_WHITE_WINS;
+			}
+			return rp;
+		}
+
+		ReturnPiece.PieceFile fromFile = FILES[MoveGenerator.from(move) & 7];
+		int fromRank = (MoveGenerator.from(move) >> 3) + 1;
+		ReturnPiece.PieceFile toFile = FILES[MoveGenerator.to(move) & 7];
+		int toRank = (MoveGenerator.to(move) >> 3) + 1;
+		char promotion = MoveGenerator.promotionChar(move); // 0 when none was given.
+
+		ReturnPiece movingPiece = findPieceAt(fromFile, fromRank);
+		if (movingPiece == null) {
+			rp.message = ReturnPlay.Message.ILLEGAL_MOVE;
+			return rp;
+		}
+		if (turn == Player.white && !isWhite(movingPiece)) {
+			rp.message = ReturnPlay.Message.ILLEGAL_MOVE;
+			return rp;
+		}
+
+		if (turn == Player.black && !isBlack(movingPiece)) {
+			rp.message = ReturnPlay.Message.ILLEGAL_MOVE;
+			return rp;
+		}
+
+		ReturnPiece targetPiece = findPieceAt(toFile, toRank);
+		if (sameColor(movingPiece, targetPiece)) {
+			rp.message = ReturnPlay.Message.ILLEGAL_MOVE;
+			return rp;
+		}
+
+		boolean pawnMove = pieceType(movingPiece) == 'P';
+		if (pawnMove && targetPiece == null && MoveGenerator.to(move) == enPassantSquare
+				&& movingPiece.pieceFile != toFile) { // En passant takes the pawn beside us.
+			targetPiece = board[(MoveGenerator.from(move) & ~7) | (MoveGenerator.to(move) & 7)];
+		}
+		Player mover = turn;
+		// Filled in before anything changes, kept only if the move goes through.
+		saveUndo(MoveGenerator.from(move), MoveGenerator.to(move), targetPiece);
+
+		if (Metrics.ENABLED) {
+			validatedPiece = movingPiece.pieceType;
+			validateStart = System.nanoTime();
+		}
+		// Parsing and basic validation are implemented below.
+		switch (pieceType(movingPiece)) {
+			case 'P':
+				if (targetPiece == null) { // Pawn push: straight ahead onto an empty square.
+					int direction;
+					int startRank;
+					if (isWhite(movingPiece)) {
+						direction = 1;
+						startRank = 2;
+					} else {
+						direction = -1;
+						startRank = 7;
+					}
+					int steps = (toRank - movingPiece.pieceRank) * direction;
+					if (movingPiece.pieceFile != toFile || steps < 1 || steps > 2) {
+						rp.message = ReturnPlay.Message.ILLEGAL_MOVE;
+						return rp;
+					}
+					// Two steps only from the starting rank, and only over an empty square.
+					if (steps == 2 && (movingPiece.pieceRank != startRank
+							|| findPieceAt(toFile, toRank - direction) != null)) {
+						rp.message = ReturnPlay.Message.ILLEGAL_MOVE;
+						return rp;
+					}
+					movePiece(movingPiece, toFile, toRank);
+					handlePawnPromotion(movingPiece, promotion); // Promote if it reaches the end of the board.
+				}
+				else { // Pawn capture: one file sideways and one rank forward.
+					int direction;
+					if (isWhite(movingPiece)) {
+						direction = 1;
+					} else {
+						direction = -1;
+					}
+					int captureFileDistance = Math
+							.abs(calculatePieceFile(movingPiece.pieceFile) - calculatePieceFile(toFile));
+					if (captureFileDistance != 1 || toRank - movingPiece.pieceRank != direction) {
+						rp.message = ReturnPlay.Message.ILLEGAL_MOVE;
+						return rp;
+					}
+					removePiece(targetPiece);
+					movePiece(movingPiece, toFile, toRank);
+					handlePawnPromotion(movingPiece, promotion);
+				}
+
+				break;
+			case 'R':
+				// The rook must reach the destination along a file or rank with nothing in between.
+				if (!reaches(Magic.rookAttacks(MoveGenerator.from(move), attacks.occupied()), move)) {
+					rp.message = ReturnPlay.Message.ILLEGAL_MOVE;
+					return rp;
+				}
+
+				// Capture if destination has an opponent piece. I already made sure that this
+				// wont work if the attacked piece is same color
+				if (targetPiece != null) {
+					removePiece(targetPiece); // Remove captured piece.
+				}
+
+				movePiece(movingPiece, toFile, toRank);
+				break;
+			case 'N':
+				// Knights can jump over pieces so no path check is needed.
+				int fileDistance = Math
+						.abs(calculatePieceFile(movingPiece.pieceFile) - calculatePieceFile(toFile));
+				int rankDistance = Math.abs(movingPiece.pieceRank - toRank);
+				// Knight has to move in an L-shape: (2,1) or (1,2).
+				if (!((fileDistance == 2 && rankDistance == 1) || (fileDistance == 1 && rankDistance == 2))) {
+					rp.message = ReturnPlay.Message.ILLEGAL_MOVE;
+					return rp;
+				}
+				// capture if opponent is on destination
+				if (targetPiece != null) {
+					removePiece(targetPiece);
+				}
+
+				movePiece(movingPiece, toFile, toRank);
+				break;
+			case 'B':
+				// The bishop must reach the destination along a diagonal with nothing in between.
+				if (!reaches(Magic.bishopAttacks(MoveGenerator.from(move), attacks.occupied()), move)) {
+					rp.message = ReturnPlay.Message.ILLEGAL_MOVE;
+					return rp;
+				}
+
+				// Only capture once the whole move is known to be allowed.
+				if (targetPiece != null) {
+					removePiece(targetPiece);
+				}
+
+				movePiece(movingPiece, toFile, toRank);
+				break;
+			case 'Q':
+				if (!reaches(Magic.queenAttacks(MoveGenerator.from(move), attacks.occupied()), move)) {
+					rp.message = ReturnPlay.Message.ILLEGAL_MOVE;
+					return rp;
+				}
+
+				if (targetPiece != null) {
+					removePiece(targetPiece);
+				}
+
+				movePiece(movingPiece, toFile, toRank);
+
+				break;
+			case 'K':
+				int kingFileDistance = Math
+						.abs(calculatePieceFile(movingPiece.pieceFile) - calculatePieceFile(toFile));
+				int kingRankDistance = Math.abs(movingPiece.pieceRank - toRank);
+
+				if (kingRankDistance == 0 && kingFileDistance == 2) { // Castling move.
+					if (!castleKing(movingPiece, toFile)) { // Castling failed.
+						rp.message = ReturnPlay.Message.ILLEGAL_MOVE;
+						return rp;
+					}
+				} else {
+					if (kingFileDistance > 1 || kingRankDistance > 1
+							|| (kingFileDistance == 0 && kingRankDistance == 0)) { // Kings move one square in any direction.
+						rp.message = ReturnPlay.Message.ILLEGAL_MOVE;
+						return rp;
+					}
+
+					if (targetPiece != null) {
+						removePiece(targetPiece);
+					}
+
+					movePiece(movingPiece, toFile, toRank);
+				}
+				break;
+			default:
+				break;
+		}
+		if (Metrics.ENABLED) {
+			validateNanos = System.nanoTime() - validateStart;
+		}
+		int undoMarks = 0;
+		if (pawnMove && pieceType(movingPiece) != 'P') {
+			undoMarks |= UNDO_PROMOTED;
+		}
+		if (pieceType(movingPiece) == 'K' && Math.abs(toFile.ordinal() - fromFile.ordinal()) == 2) {
+			undoMarks |= UNDO_CASTLED;
+		}
+		undoFlags[undoSize++] = undoMarks;
+
+		// Remember the square a two-step pawn skipped over, for en passant.
+		if (pieceType(movingPiece) == 'P' && Math.abs(toRank - fromRank) == 2
+				&& findPieceAt(toFile, toRank) == movingPiece) {
+			setEnPassantSquare(squareIndex(toFile, (toRank + fromRank) / 2));
+		} else {
+			setEnPassantSquare(-1);
+		}
+		changePlayer();
+		recordPosition(pawnMove || targetPiece != null);
+
+		long attackStart = Metrics.ENABLED ? System.nanoTime() : 0;
+		boolean leftInCheck = isInCheck(mover);
+		if (Metrics.ENABLED) {
+			attackCheckNanos = System.nanoTime() - attackStart;
+		}
+		if (leftInCheck) { // No move may leave your own king attacked.
+			unmakeMove();
+			rp.message = ReturnPlay.Message.ILLEGAL_MOVE;
+			return rp;
+		}
+
+		lastPlayed = undoSize - 1;
+		ReturnPlay.Message verdict;
+		boolean inCheck = isInCheck(turn);
+		if (!MoveGenerator.hasLegalMove(this)) { // Mate and stalemate end the game before any draw rule.
+			if (!inCheck) {
+				rp.message = ReturnPlay.Message.STALEMATE;
+			} else if (turn == Player.white) {
+				rp.message = ReturnPlay.Message.CHECKMATE_BLACK_WINS;
+			} else {
+				rp.message = ReturnPlay.Message.CHECKMATE_WHITE_WINS;
+			}
+		} else if (isDraw()) {
+			rp.message = ReturnPlay.Message.DRAW;
+		} else if (adjudicator != null && (verdict = adjudicator.adjudicate(this)) != null) {
+			rp.message = verdict;
+		} else if (inCheck) {
+			rp.message = ReturnPlay.Message.CHECK;
+		} else {
+			rp.message = null;
+		}
+		return rp;
+	}
+
+	private void changePlayer() { // Changes the current player.
+		if (turn == Player.white) {
+			turn = Player.black;
+		} else {
+			turn = Player.white;
+		}
+		zobristKey ^= Zobrist.BLACK_TO_MOVE;
+	}
+
+	private void setEnPassantSquare(int square) {
+		if (enPassantSquare != -1) {
+			zobristKey ^= Zobrist.enPassant(enPassantSquare);
+		}
+		enPassantSquare = square;
+		if (square != -1) {
+			zobristKey ^= Zobrist.enPassant(square);
+		}
+	}
+
+	private void recordPosition(boolean irreversible) {
+		// Called once per move, after the turn has passed to the other player.
+		if (irreversible) {
+			halfmoveClock = 0;
+		} else {
+			halfmoveClock++;
+		}
+		if (historySize == keyHistory.length) {
+			keyHistory = Arrays.copyOf(keyHistory, historySize * 2);
+		}
+		keyHistory[historySize++] = zobristKey;
+	}
+
+	/**
+	 * Checks for a draw by threefold repetition or the fifty-move rule.
+	 */
+	boolean isDraw() {
+		if (halfmoveClock >= 100) { // Fifty moves each without a capture or pawn move.
+			return true;
+		}
+		// Only positions since the last irreversible move, with the same side to move, can repeat.
+		int repetitions = 1;
+		int oldest = Math.max(0, historySize - 1 - halfmoveClock);
+		for (int i = historySize - 3; i >= oldest; i -= 2) {
+			if (keyHistory[i] == zobristKey) {
+				repetitions++;
+				if (repetitions >= 3) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * This method should reset the game, and start from scratch.
+	 */
+	public synchronized void start() {
+		turn = Player.white; // White always starts first
+		rp = new ReturnPlay();
+		rp.message = null;
+		rp.piecesOnBoard = new ArrayList<>();
+		Arrays.fill(board, null);
+		attacks.clear();
+		if (network != null) {
+			network.clear();
+		}
+		kingSquares[AttackMap.WHITE] = -1;
+		kingSquares[AttackMap.BLACK] = -1;
+		enPassantSquare = -1;
+		zobristKey = 0;
+		historySize = 0;
+		halfmoveClock = 0;
+		startPly = 0;
+		undoSize = 0;
+		lastPlayed = -1;
+		whiteKingMoved = false;
+		blackKingMoved = false;
+		whiteKingsideRookMoved = false;
+		whiteQueensideRookMoved = false;
+		blackKingsideRookMoved = false;
+		blackQueensideRookMoved = false;
+		zobristKey ^= Zobrist.castling(castlingRights());
+
+		// Pawns
+		for (int i = 0; i < 8; i++) {
+			ReturnPiece.PieceFile file = FILES[i];
+
+			addPiece(ReturnPiece.PieceType.WP, file, 2); // White Pawns
+
+			addPiece(ReturnPiece.PieceType.BP, file, 7); // Black Pawns
+		}
+
+		// White back rank (rank 1)
+		addPiece(ReturnPiece.PieceType.WR, ReturnPiece.PieceFile.a, 1);
+		addPiece(ReturnPiece.PieceType.WN, ReturnPiece.PieceFile.b, 1);
+		addPiece(ReturnPiece.PieceType.WB, ReturnPiece.PieceFile.c, 1);
+		addPiece(ReturnPiece.PieceType.WQ, ReturnPiece.PieceFile.d, 1);
+		addPiece(ReturnPiece.PieceType.WK, ReturnPiece.PieceFile.e, 1);
+		addPiece(ReturnPiece.PieceType.WB, ReturnPiece.PieceFile.f, 1);
+		addPiece(ReturnPiece.PieceType.WN, ReturnPiece.PieceFile.g, 1);
+		addPiece(ReturnPiece.PieceType.WR, ReturnPiece.PieceFile.h, 1);
+
+		// Black back rank (rank 8)
+		addPiece(ReturnPiece.PieceType.BR, ReturnPiece.PieceFile.a, 8);
+		addPiece(ReturnPiece.PieceType.BN, ReturnPiece.PieceFile.b, 8);
+		addPiece(ReturnPiece.PieceType.BB, ReturnPiece.PieceFile.c, 8);
+		addPiece(ReturnPiece.PieceType.BQ, ReturnPiece.PieceFile.d, 8);
+		addPiece(ReturnPiece.PieceType.BK, ReturnPiece.PieceFile.e, 8);
+		addPiece(ReturnPiece.PieceType.BB, ReturnPiece.PieceFile.f, 8);
+		addPiece(ReturnPiece.PieceType.BN, ReturnPiece.PieceFile.g, 8);
+		addPiece(ReturnPiece.PieceType.BR, ReturnPiece.PieceFile.h, 8);
+		recordPosition(true);
+	}
+
+	/**
+	 * Empties the board for setting up a position piece by piece with
+	 * addPiece. White is to move and neither side may castle.
+	 */
+	synchronized void clearBoard() {
+		start();
+		for (ReturnPiece p : new ArrayList<>(rp.piecesOnBoard)) {
+			removePiece(p);
+		}
+		historySize = 0; // The set-up position itself is not counted for repetition.
+	}
+
+	/**
+	 * Replaces the whole position at once, as read from a FEN record. The
+	 * pieces already in the list are reused, so loading allocates nothing
+	 * once the session has held as many pieces before. The undo stack and
+	 * repetition history start over from this position.
+	 *
+	 * @param squares piece on each square, a1 = 0 to h8 = 63, or null
+	 * @param movedBits the six *Moved flags, bit n set for Zobrist flag n; a
+	 *        king or rook off its home square counts as moved
+	 * @param enPassant square skipped by the last two-step pawn move, or -1
+	 * @param fullmoveNumber the move number, starting at 1
+	 */
+	synchronized void setPosition(ReturnPiece.PieceType[] squares, Player toMove, int movedBits, int enPassant,
+			int halfmoves, int fullmoveNumber) {
+		ArrayList<ReturnPiece> pieces = rp.piecesOnBoard;
+		rp.message = null;
+		Arrays.fill(board, null);
+		kingSquares[AttackMap.WHITE] = -1;
+		kingSquares[AttackMap.BLACK] = -1;
+		zobristKey = 0;
+		int used = 0;
+		for (int square = 0; square < 64; square++) {
+			ReturnPiece.PieceType type = squares[square];
+			if (type == null) {
+				continue;
+			}
+			ReturnPiece p;
+			if (used < pieces.size()) {
+				p = pieces.get(used);
+			} else {
+				p = new ReturnPiece();
+				pieces.add(p);
+			}
+			used++;
+			p.pieceType = type;
+			p.pieceFile = FILES[square & 7];
+			p.pieceRank = (square >> 3) + 1;
+			board[square] = p;
+			trackKing(p, square);
+			zobristKey ^= Zobrist.piece(type, square);
+		}
+		while (pieces.size() > used) {
+			pieces.remove(pieces.size() - 1);
+		}
+		attacks.rebuild();
+		if (network != null) {
+			network.refresh(this);
+		}
+
+		setCastlingBits(movedBits | awayFromHome());
+		zobristKey ^= Zobrist.castling(castlingRights());
+		turn = toMove;
+		if (turn == Player.black) {
+			zobristKey ^= Zobrist.BLACK_TO_MOVE;
+		}
+		enPassantSquare = -1;
+		setEnPassantSquare(enPassant);
+
+		halfmoveClock = halfmoves;
+		startPly = 2 * (fullmoveNumber - 1) + (turn == Player.black ? 1 : 0);
+		Arrays.fill(undoCaptured, 0, undoSize, null);
+		undoSize = 0;
+		lastPlayed = -1;
+		keyHistory[0] = zobristKey;
+		historySize = 1;
+	}
+
+	/**
+	 * Returns the six *Moved flags packed as for setPosition.
+	 */
+	synchronized int getMovedBits() {
+		return castlingBits();
+	}
+
+	/**
+	 * Returns the move number in FEN terms: 1 at the start, up by one after
+	 * each black move.
+	 */
+	synchronized int getFullmoveNumber() {
+		return (startPly + undoSize) / 2 + 1;
+	}
+
+	/**
+	 * Returns the result object for this session, as handed back by play.
+	 */
+	synchronized ReturnPlay getReturnPlay() {
+		return rp;
+	}
+
+	Player getTurn() {
+		return turn;
+	}
+
+	/**
+	 * Gives the move to player, for setting up a position after clearBoard.
+	 */
+	synchronized void setTurn(Player player) {
+		if (turn != player) {
+			changePlayer();
+		}
+	}
+
+	/**
+	 * Turns adjudication mode on, or off with null: once a move reaches an
+	 * ending the bitbase knows, play reports its result straight away.
+	 */
+	synchronized void setAdjudicator(Bitbase bitbase) {
+		adjudicator = bitbase;
+	}
+
+	int pieceCount() {
+		return rp.piecesOnBoard.size();
+	}
+
+	ReturnPiece pieceAt(int square) {
+		return board[square];
+	}
+
+	/**
+	 * Returns the occupied squares as a bitboard, bit i for square i.
+	 */
+	long occupied() {
+		return attacks.occupied();
+	}
+
+	AttackMap attackMap() {
+		return attacks;
+	}
+
+	/**
+	 * Makes Evaluator score this session with network, kept up to date move
+	 * by move from here on, or with its tables again when network is null.
+	 */
+	synchronized void setNetwork(Nnue network) {
+		if (network == null) {
+			this.network = null;
+			return;
+		}
+		this.network = new NnueAccumulator(network);
+		this.network.refresh(this);
+	}
+
+	NnueAccumulator network() {
+		return network;
+	}
+
+	// Every change to one square goes through these two, which keep the
+	// attack map and the network's sums in step with the board.
+	private void beforeChange(int square) {
+		attacks.beforeChange(square);
+		if (network != null && board[square] != null) {
+			network.remove(board[square].pieceType, square);
+		}
+	}
+
+	private void afterChange(int square) {
+		attacks.afterChange(square);
+		if (network != null && board[square] != null) {
+			network.add(board[square].pieceType, square);
+		}
+	}
+
+	int getEnPassantSquare() {
+		return enPassantSquare;
+	}
+
+	long getZobristKey() {
+		return zobristKey;
+	}
+
+	int getHalfmoveClock() {
+		return halfmoveClock;
+	}
+
+	/**
+	 * Finds the king of the given player, or null if it is not on the board.
+	 */
+	ReturnPiece findKing(Player player) {
+		int square = kingSquares[side(player)];
+		if (square < 0) {
+			return null;
+		}
+		return board[square];
+	}
+
+	/**
+	 * Checks whether the given player's king is attacked.
+	 */
+	boolean isInCheck(Player player) {
+		if (Metrics.ENABLED) {
+			attackQueries++;
+		}
+		int square = kingSquares[side(player)];
+		return square >= 0 && attacks.isAttacked(1 - side(player), square);
+	}
+
+	private static int side(Player player) {
+		if (player == Player.white) {
+			return AttackMap.WHITE;
+		}
+		return AttackMap.BLACK;
+	}
+
+	// Keeps kingSquares in step when a king lands on square.
+	private void trackKing(ReturnPiece piece, int square) {
+		if (piece.pieceType == ReturnPiece.PieceType.WK) {
+			kingSquares[AttackMap.WHITE] = square;
+		} else if (piece.pieceType == ReturnPiece.PieceType.BK) {
+			kingSquares[AttackMap.BLACK] = square;
+		}
+	}
+
+	/**
+	 * Plays a move produced by MoveGenerator and hands the turn to the other
+	 * player. The move is assumed to be legal, so nothing is validated here.
+	 * unmakeMove takes it back.
+	 */
+	void makeMove(int move) {
+		int from = MoveGenerator.from(move);
+		int to = MoveGenerator.to(move);
+		ReturnPiece piece = board[from];
+		ReturnPiece target = board[to];
+		int fileStep = (to & 7) - (from & 7);
+		boolean pawn = pieceType(piece) == 'P';
+		boolean castling = pieceType(piece) == 'K' && Math.abs(fileStep) == 2;
+
+		if (pawn && fileStep != 0 && target == null) { // En passant takes the pawn beside us.
+			target = board[(from & ~7) | (to & 7)];
+		}
+		saveUndo(from, to, target);
+		if (target != null) {
+			removePiece(target);
+		}
+		if (castling) { // Castling also moves the rook.
+			int rank = (from >> 3) + 1;
+			if (fileStep > 0) {
+				movePiece(board[from | 7], ReturnPiece.PieceFile.f, rank);
+			} else {
+				movePiece(board[from & ~7], ReturnPiece.PieceFile.d, rank);
+			}
+		}
+		movePiece(piece, FILES[to & 7], (to >> 3) + 1);
+		int undoMarks = castling ? UNDO_CASTLED : 0;
+		if (MoveGenerator.promotion(move) != 0) {
+			promotePawn(piece, MoveGenerator.promotionChar(move));
+			undoMarks |= UNDO_PROMOTED;
+		}
+		undoFlags[undoSize++] = undoMarks;
+
+		if (pawn && Math.abs(to - from) == 16) {
+			setEnPassantSquare((from + to) / 2);
+		} else {
+			setEnPassantSquare(-1);
+		}
+		changePlayer();
+		recordPosition(pawn || target != null);
+	}
+
+	/**
+	 * Takes back the last move made by play or makeMove, restoring the board,
+	 * turn, castling flags, en passant square, clocks and key exactly.
+	 */
+	void unmakeMove() {
+		int i = --undoSize;
+		int from = undoFrom[i];
+		int to = undoTo[i];
+		ReturnPiece piece = board[to];
+
+		if ((undoFlags[i] & UNDO_PROMOTED) != 0) {
+			beforeChange(to);
+			if (isWhite(piece)) {
+				piece.pieceType = ReturnPiece.PieceType.WP;
+			} else {
+				piece.pieceType = ReturnPiece.PieceType.BP;
+			}
+			afterChange(to);
+		}
+		relocate(piece, from);
+		if ((undoFlags[i] & UNDO_CASTLED) != 0) { // Put the rook back in its corner.
+			if (to > from) {
+				relocate(board[from + 1], from | 7);
+			} else {
+				relocate(board[from - 1], from & ~7);
+			}
+		}
+		ReturnPiece captured = undoCaptured[i];
+		if (captured != null) {
+			undoCaptured[i] = null;
+			int square = squareIndex(captured.pieceFile, captured.pieceRank);
+			rp.piecesOnBoard.add(captured);
+			beforeChange(square);
+			board[square] = captured;
+			afterChange(square);
+			trackKing(captured, square);
+		}
+
+		if (turn == Player.white) {
+			turn = Player.black;
+		} else {
+			turn = Player.white;
+		}
+		setCastlingBits(undoCastling[i]);
+		enPassantSquare = undoEnPassant[i];
+		halfmoveClock = undoHalfmoveClock[i];
+		zobristKey = undoKey[i];
+		historySize--;
+	}
+
+	/**
+	 * Takes back the last move, if there is one.
+	 *
+	 * @return A ReturnPlay instance with the restored board, and
+	 *         ILLEGAL_MOVE if there was nothing to take back.
+	 */
+	public synchronized ReturnPlay takeback() {
+		if (undoSize == 0) {
+			rp.message = ReturnPlay.Message.ILLEGAL_MOVE;
+			return rp;
+		}
+		unmakeMove();
+		lastPlayed = -1;
+		rp.message = null;
+		return rp;
+	}
+
+	/**
+	 * Fills delta with what the last call to play changed, so a client can
+	 * update its own board instead of redrawing every piece.
+	 *
+	 * @return false, leaving delta cleared, if that call made no move
+	 */
+	synchronized boolean lastDelta(PlayDelta delta) {
+		delta.clear();
+		if (lastPlayed < 0 || lastPlayed != undoSize - 1) {
+			return false;
+		}
+		int i = lastPlayed;
+		delta.from = undoFrom[i];
+		delta.to = undoTo[i];
+		delta.moved = board[delta.to];
+		ReturnPiece captured = undoCaptured[i];
+		if (captured != null) {
+			delta.captured = captured;
+			delta.capturedSquare = squareIndex(captured.pieceFile, captured.pieceRank);
+		}
+		if ((undoFlags[i] & UNDO_CASTLED) != 0) {
+			if (delta.to > delta.from) {
+				delta.rookFrom = delta.from | 7;
+				delta.rookTo = delta.from + 1;
+			} else {
+				delta.rookFrom = delta.from & ~7;
+				delta.rookTo = delta.from - 1;
+			}
+			delta.castledRook = board[delta.rookTo];
+		}
+		if ((undoFlags[i] & UNDO_PROMOTED) != 0) {
+			delta.promotedTo = delta.moved.pieceType;
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the move the last call to play made, encoded as by
+	 * MoveGenerator, or MoveGenerator.INVALID if that call made no move.
+	 */
+	synchronized int lastMove() {
+		if (lastPlayed < 0 || lastPlayed != undoSize - 1) {
+			return MoveGenerator.INVALID;
+		}
+		int promotion = 0;
+		if ((undoFlags[lastPlayed] & UNDO_PROMOTED) != 0) {
+			promotion = "NBRQ".indexOf(board[undoTo[lastPlayed]].pieceType.name().charAt(1)) + 1;
+		}
+		return MoveGenerator.encode(undoFrom[lastPlayed], undoTo[lastPlayed], promotion);
+	}
+
+	// Records the state a move is about to change, in the next undo slot.
+	private void saveUndo(int from, int to, ReturnPiece captured) {
+		if (undoSize == undoFrom.length) {
+			int size = undoSize * 2;
+			undoFrom = Arrays.copyOf(undoFrom, size);
+			undoTo = Arrays.copyOf(undoTo, size);
+			undoCaptured = Arrays.copyOf(undoCaptured, size);
+			undoFlags = Arrays.copyOf(undoFlags, size);
+			undoCastling = Arrays.copyOf(undoCastling, size);
+			undoEnPassant = Arrays.copyOf(undoEnPassant, size);
+			undoHalfmoveClock = Arrays.copyOf(undoHalfmoveClock, size);
+			undoKey = Arrays.copyOf(undoKey, size);
+		}
+		int i = undoSize;
+		undoFrom[i] = from;
+		undoTo[i] = to;
+		undoCaptured[i] = captured;
+		undoCastling[i] = castlingBits();
+		undoEnPassant[i] = enPassantSquare;
+		undoHalfmoveClock[i] = halfmoveClock;
+		undoKey[i] = zobristKey;
+	}
+
+	// The six *Moved flags packed into bits, in Zobrist flag order.
+	private int castlingBits() {
+		int bits = 0;
+		if (whiteKingMoved) {
+			bits |= 1 << Zobrist.WHITE_KING;
+		}
+		if (blackKingMoved) {
+			bits |= 1 << Zobrist.BLACK_KING;
+		}
+		if (whiteKingsideRookMoved) {
+			bits |= 1 << Zobrist.WHITE_KINGSIDE_ROOK;
+		}
+		if (whiteQueensideRookMoved) {
+			bits |= 1 << Zobrist.WHITE_QUEENSIDE_ROOK;
+		}
+		if (blackKingsideRookMoved) {
+			bits |= 1 << Zobrist.BLACK_KINGSIDE_ROOK;
+		}
+		if (blackQueensideRookMoved) {
+			bits |= 1 << Zobrist.BLACK_QUEENSIDE_ROOK;
+		}
+		return bits;
+	}
+
+	// The flags for the kings and rooks not on their home squares.
+	private int awayFromHome() {
+		int bits = 0;
+		if (!standsOn(4, ReturnPiece.PieceType.WK)) {
+			bits |= 1 << Zobrist.WHITE_KING;
+		}
+		if (!standsOn(60, ReturnPiece.PieceType.BK)) {
+			bits |= 1 << Zobrist.BLACK_KING;
+		}
+		if (!standsOn(7, ReturnPiece.PieceType.WR)) {
+			bits |= 1 << Zobrist.WHITE_KINGSIDE_ROOK;
+		}
+		if (!standsOn(0, ReturnPiece.PieceType.WR)) {
+			bits |= 1 << Zobrist.WHITE_QUEENSIDE_ROOK;
+		}
+		if (!standsOn(63, ReturnPiece.PieceType.BR)) {
+			bits |= 1 << Zobrist.BLACK_KINGSIDE_ROOK;
+		}
+		if (!standsOn(56, ReturnPiece.PieceType.BR)) {
+			bits |= 1 << Zobrist.BLACK_QUEENSIDE_ROOK;
+		}
+		return bits;
+	}
+
+	private boolean standsOn(int square, ReturnPiece.PieceType type) {
+		return board[square] != null && board[square].pieceType == type;
+	}
+
+	// The castling rights the *Moved flags leave, as Zobrist rights bits.
+	private int castlingRights() {
+		int rights = 0;
+		if (!whiteKingMoved) {
+			if (!whiteKingsideRookMoved) {
+				rights |= Zobrist.WHITE_KINGSIDE;
+			}
+			if (!whiteQueensideRookMoved) {
+				rights |= Zobrist.WHITE_QUEENSIDE;
+			}
+		}
+		if (!blackKingMoved) {
+			if (!blackKingsideRookMoved) {
+				rights |= Zobrist.BLACK_KINGSIDE;
+			}
+			if (!blackQueensideRookMoved) {
+				rights |= Zobrist.BLACK_QUEENSIDE;
+			}
+		}
+		return rights;
+	}
+
+	private void setCastlingBits(int bits) {
+		whiteKingMoved = (bits & (1 << Zobrist.WHITE_KING)) != 0;
+		blackKingMoved = (bits & (1 << Zobrist.BLACK_KING)) != 0;
+		whiteKingsideRookMoved = (bits & (1 << Zobrist.WHITE_KINGSIDE_ROOK)) != 0;
+		whiteQueensideRookMoved = (bits & (1 << Zobrist.WHITE_QUEENSIDE_ROOK)) != 0;
+		blackKingsideRookMoved = (bits & (1 << Zobrist.BLACK_KINGSIDE_ROOK)) != 0;
+		blackQueensideRookMoved = (bits & (1 << Zobrist.BLACK_QUEENSIDE_ROOK)) != 0;
+	}
+
+	/**
+	 * Takes whatever stands on square off the board, for setting up positions.
+	 */
+	synchronized void removePieceAt(int square) {
+		if (board[square] != null) {
+			removePiece(board[square]);
+		}
+	}
+
+	void addPiece(ReturnPiece.PieceType type, ReturnPiece.PieceFile file, int rank) {
+		ReturnPiece p = new ReturnPiece();
+		p.pieceType = type;
+		p.pieceFile = file;
+		p.pieceRank = rank;
+		rp.piecesOnBoard.add(p);
+		int square = squareIndex(file, rank);
+		beforeChange(square);
+		board[square] = p;
+		afterChange(square);
+		trackKing(p, square);
+		zobristKey ^= Zobrist.piece(type, square);
+	}
+
+	private void removePiece(ReturnPiece piece) {
+		// Takes a captured piece off both the list and the board array.
+		markPieceAsMoved(piece); // A rook captured at home can no longer castle.
+		rp.piecesOnBoard.remove(piece);
+		int index = squareIndex(piece.pieceFile, piece.pieceRank);
+		if (board[index] == piece) {
+			beforeChange(index);
+			board[index] = null;
+			afterChange(index);
+		}
+		if (piece.pieceType == ReturnPiece.PieceType.WK) {
+			kingSquares[AttackMap.WHITE] = -1;
+		} else if (piece.pieceType == ReturnPiece.PieceType.BK) {
+			kingSquares[AttackMap.BLACK] = -1;
+		}
+		zobristKey ^= Zobrist.piece(piece.pieceType, index);
+	}
+
+	private int squareIndex(ReturnPiece.PieceFile file, int rank) {
+		return (rank - 1) * 8 + file.ordinal();
+	}
+
+	private ReturnPiece findPieceAt(ReturnPiece.PieceFile file, int rank) {
+		if (Metrics.ENABLED) {
+			findPieceAtCalls++;
+		}
+		return board[squareIndex(file, rank)];
+	}
+
+	private boolean isWhite(ReturnPiece p) {
+		// Check first char of piece type to determine color.
+		return p != null && p.pieceType.name().charAt(0) == 'W';
+	}
+
+	private boolean isBlack(ReturnPiece p) {
+		return p != null && p.pieceType.name().charAt(0) == 'B';
+	}
+
+	private boolean sameColor(ReturnPiece a, ReturnPiece b) {
+		if (a == null || b == null) {
+			return false;
+		}
+		return isWhite(a) == isWhite(b);
+	}
+
+	private char pieceType(ReturnPiece p) {
+		return p.pieceType.name().charAt(1);
+	}
+
+	private int calculatePieceFile(ReturnPiece.PieceFile p) {
+		// Same numbering as Character.getNumericValue: a = 10 .. h = 17.
+		return p.ordinal() + 10;
+	}
+
+	// Whether the destination of move is one of the squares in attacked.
+	private static boolean reaches(long attacked, int move) {
+		return (attacked & (1L << MoveGenerator.to(move))) != 0;
+	}
+
+	private void handlePawnPromotion(ReturnPiece pawn, char promotion) {
+		if (pawn == null) {
+			return;
+		}
+
+		if (pieceType(pawn) != 'P') { // Non-pawns cannot be promoted.
+			return;
+		}
+
+		if (isWhite(pawn)) {
+			if (pawn.pieceRank != 8) { // White pawns promote only on rank 8.
+				return;
+			}
+		} else { // Black pawns promote only on rank 1.
+			if (pawn.pieceRank != 1) {
+				return;
+			}
+		}
+
+		char promotionPiece;
+		if (promotion == 0) { // Queen unless the move asked for something else.
+			promotionPiece = 'Q';
+		} else {
+			promotionPiece = promotion;
+		}
+		long start = Metrics.ENABLED ? System.nanoTime() : 0;
+		promotePawn(pawn, promotionPiece);
+		if (Metrics.ENABLED) {
+			promotionNanos = System.nanoTime() - start;
+		}
+	}
+
+	private void promotePawn(ReturnPiece pawn, char promotionPiece) {
+		int square = squareIndex(pawn.pieceFile, pawn.pieceRank);
+		zobristKey ^= Zobrist.piece(pawn.pieceType, square);
+		beforeChange(square);
+		if (isWhite(pawn)) { // Promote to the chosen white piece.
+			if (promotionPiece == 'Q') {
+				pawn.pieceType = ReturnPiece.PieceType.WQ;
+			} else if (promotionPiece == 'R') {
+				pawn.pieceType = ReturnPiece.PieceType.WR;
+			} else if (promotionPiece == 'B') {
+				pawn.pieceType = ReturnPiece.PieceType.WB;
+			} else if (promotionPiece == 'N') {
+				pawn.pieceType = ReturnPiece.PieceType.WN;
+			}
+		} else {
+			if (promotionPiece == 'Q') {
+				pawn.pieceType = ReturnPiece.PieceType.BQ;
+			} else if (promotionPiece == 'R') {
+				pawn.pieceType = ReturnPiece.PieceType.BR;
+			} else if (promotionPiece == 'B') {
+				pawn.pieceType = ReturnPiece.PieceType.BB;
+			} else if (promotionPiece == 'N') {
+				pawn.pieceType = ReturnPiece.PieceType.BN;
+			}
+		}
+		afterChange(square);
+		zobristKey ^= Zobrist.piece(pawn.pieceType, square);
+	}
+
+	private void movePiece(ReturnPiece piece, ReturnPiece.PieceFile toFile, int toRank) {
+		// Assumes the move is legal and only updates piece state.
+		markPieceAsMoved(piece);
+		int fromIndex = squareIndex(piece.pieceFile, piece.pieceRank);
+		int toIndex = squareIndex(toFile, toRank);
+		relocate(piece, toIndex);
+		zobristKey ^= Zobrist.piece(piece.pieceType, fromIndex)
+				^ Zobrist.piece(piece.pieceType, toIndex);
+	}
+
+	// Moves a piece to an empty square, keeping the board array and attack map in step.
+	private void relocate(ReturnPiece piece, int toIndex) {
+		int fromIndex = squareIndex(piece.pieceFile, piece.pieceRank);
+		if (board[fromIndex] == piece) {
+			beforeChange(fromIndex);
+			board[fromIndex] = null;
+			afterChange(fromIndex);
+		}
+		piece.pieceFile = FILES[toIndex & 7];
+		piece.pieceRank = (toIndex >> 3) + 1;
+		beforeChange(toIndex);
+		board[toIndex] = piece;
+		afterChange(toIndex);
+		trackKing(piece, toIndex);
+	}
+
+	private boolean castleKing(ReturnPiece king, ReturnPiece.PieceFile toFile) {
+		// Assumes the move is a castling attempt and tries to execute it.
+		if (!canCastle(king, toFile)) {
+			return false;
+		}
+
+		int rank = king.pieceRank;
+		boolean kingside = calculatePieceFile(toFile) > calculatePieceFile(king.pieceFile);
+		ReturnPiece rook;
+		ReturnPiece.PieceFile middleFile;
+		if (kingside) {
+			rook = findPieceAt(ReturnPiece.PieceFile.h, rank);
+			middleFile = ReturnPiece.PieceFile.f;
+		} else {
+			rook = findPieceAt(ReturnPiece.PieceFile.a, rank);
+			middleFile = ReturnPiece.PieceFile.d;
+		}
+
+		movePiece(king, toFile, rank);
+		movePiece(rook, middleFile, rank);
+		return true;
+	}
+
+	/**
+	 * Checks the castling rules for moving the king two files towards toFile,
+	 * without moving anything.
+	 */
+	boolean canCastle(ReturnPiece king, ReturnPiece.PieceFile toFile) {
+		if (hasKingMoved(king) || findPieceAt(toFile, king.pieceRank) != null) { // Reject if the king moved or the destination is occupied.
+			return false;
+		}
+
+		int rank = king.pieceRank; // King and rook must stay on the same rank.
+		boolean kingside = calculatePieceFile(toFile) > calculatePieceFile(king.pieceFile); // True for kingside castling, false for queenside.
+		ReturnPiece.PieceFile rookFile;
+		if (kingside) { // Kingside uses the h-file rook; queenside uses the a-file rook.
+			rookFile = ReturnPiece.PieceFile.h;
+		} else {
+			rookFile = ReturnPiece.PieceFile.a;
+		}
+		ReturnPiece rook = findPieceAt(rookFile, rank);
+
+		if (rook == null || pieceType(rook) != 'R' || sameColor(king, rook) == false || hasRookMoved(rook)) {
+			return false;
+		}
+
+		// The king sees its rook along the rank only when every square between is empty.
+		int kingSquare = squareIndex(king.pieceFile, rank);
+		if ((Magic.rookAttacks(kingSquare, attacks.occupied()) & (1L << squareIndex(rookFile, rank))) == 0) {
+			return false;
+		}
+
+		Player defendingPlayer;
+		if (isWhite(king)) {
+			defendingPlayer = Player.white;
+		} else {
+			defendingPlayer = Player.black;
+		}
+		if (isSquareUnderAttack(king.pieceFile, rank, defendingPlayer)) {
+			return false;
+		}
+
+		ReturnPiece.PieceFile middleFile;
+		if (kingside) {
+			middleFile = ReturnPiece.PieceFile.f;
+		} else {
+			middleFile = ReturnPiece.PieceFile.d;
+		}
+		if (isSquareUnderAttack(middleFile, rank, defendingPlayer)
+				|| isSquareUnderAttack(toFile, rank, defendingPlayer)) {
+			return false;
+		}
+		return true;
+	}
+
+	private void markPieceAsMoved(ReturnPiece piece) {
+		// Tracks king and rook movement for castling rights.
+		if (piece == null) {
+			return;
+		}
+
+		int rights = castlingRights();
+		switch (piece.pieceType) {
+			case WK:
+				whiteKingMoved = true;
+				break;
+			case BK:
+				blackKingMoved = true;
+				break;
+			case WR:
+				if (piece.pieceRank == 1) {
+					if (piece.pieceFile == ReturnPiece.PieceFile.a) {
+						whiteQueensideRookMoved = true;
+					} else if (piece.pieceFile == ReturnPiece.PieceFile.h) {
+						whiteKingsideRookMoved = true;
+					}
+				}
+				break;
+			case BR:
+				if (piece.pieceRank == 8) {
+					if (piece.pieceFile == ReturnPiece.PieceFile.a) {
+						blackQueensideRookMoved = true;
+					} else if (piece.pieceFile == ReturnPiece.PieceFile.h) {
+						blackKingsideRookMoved = true;
+					}
+				}
+				break;
+			default:
+				break;
+		}
+		// The key changes only when the rights do, not when a flag is set
+		// for a right that was already gone.
+		int now = castlingRights();
+		if (now != rights) {
+			zobristKey ^= Zobrist.castling(rights) ^ Zobrist.castling(now);
+		}
+	}
+
+	private boolean hasKingMoved(ReturnPiece king) {
+		if (king.pieceType == ReturnPiece.PieceType.WK) {
+			return whiteKingMoved;
+		}
+		if (king.pieceType == ReturnPiece.PieceType.BK) {
+			return blackKingMoved;
+		}
+		return true;
+	}
+
+	private boolean hasRookMoved(ReturnPiece rook) {
+		if (rook.pieceType == ReturnPiece.PieceType.WR && rook.pieceRank == 1) {
+			if (rook.pieceFile == ReturnPiece.PieceFile.a) {
+				return whiteQueensideRookMoved;
+			}
+			if (rook.pieceFile == ReturnPiece.PieceFile.h) {
+				return whiteKingsideRookMoved;
+			}
+		}
+		if (rook.pieceType == ReturnPiece.PieceType.BR && rook.pieceRank == 8) {
+			if (rook.pieceFile == ReturnPiece.PieceFile.a) {
+				return blackQueensideRookMoved;
+			}
+			if (rook.pieceFile == ReturnPiece.PieceFile.h) {
+				return blackKingsideRookMoved;
+			}
+		}
+		return true;
+	}
+
+	boolean isSquareUnderAttack(ReturnPiece.PieceFile targetFile, int targetRank,
+			Player defendingPlayer) {
+		if (Metrics.ENABLED) {
+			attackQueries++;
+		}
+		// One lookup in the attack map instead of asking every opposing piece.
+		int attackingSide = 1 - side(defendingPlayer);
+		return attacks.isAttacked(attackingSide, squareIndex(targetFile, targetRank));
+	}
+
+}
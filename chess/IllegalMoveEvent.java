@@ -0,0 +1,27 @@
+package chess;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event for a call to GameSession.play that was rejected as an illegal
+ * move.
+ */
+@Name("chess.IllegalMove")
+@Label("Illegal Move")
+@Category("Chess")
+@Description("A move rejected by GameSession.play")
+class IllegalMoveEvent extends Event {
+
+	@Label("Move")
+	String move;
+
+	@Label("Piece")
+	String piece; // null when there was no piece of the mover's on the from square
+
+	@Label("findPieceAt Calls")
+	int findPieceAtCalls;
+}
@@ -0,0 +1,93 @@
+package chess;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Log-linear histogram of non-negative values, in the style of
+ * HdrHistogram: values below 64 get a bucket each, and every power of two
+ * above that is split into 32 buckets, so any value is recorded to within
+ * about 3% in a fixed 15 KB of counts. Recording is a few shifts and one
+ * atomic increment, and is safe from any number of threads.
+ */
+final class LatencyHistogram {
+
+	private static final int SUB_BITS = 5;
+	private static final int LINEAR_LIMIT = 1 << (SUB_BITS + 1);
+	private static final int BUCKETS = ((63 - SUB_BITS) << SUB_BITS) + LINEAR_LIMIT;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final AtomicLong total = new AtomicLong();
+	private final AtomicLong sum = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+
+	void record(long value) {
+		if (value < 0) {
+			value = 0;
+		}
+		counts.incrementAndGet(bucket(value));
+		total.incrementAndGet();
+		sum.addAndGet(value);
+		max.accumulateAndGet(value, Math::max);
+	}
+
+	long count() {
+		return total.get();
+	}
+
+	long max() {
+		return max.get();
+	}
+
+	double mean() {
+		long n = total.get();
+		return n == 0 ? 0 : (double) sum.get() / n;
+	}
+
+	/**
+	 * Returns the value below which the given fraction of recorded values
+	 * fall, to the precision of its bucket.
+	 */
+	long percentile(double fraction) {
+		long n = total.get();
+		if (n == 0) {
+			return 0;
+		}
+		long target = Math.max(1, (long) Math.ceil(fraction * n));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts.get(i);
+			if (seen >= target) {
+				return Math.min(highestInBucket(i), max.get());
+			}
+		}
+		return max.get();
+	}
+
+	void clear() {
+		for (int i = 0; i < BUCKETS; i++) {
+			counts.set(i, 0);
+		}
+		total.set(0);
+		sum.set(0);
+		max.set(0);
+	}
+
+	private static int bucket(long value) {
+		if (value < LINEAR_LIMIT) {
+			return (int) value;
+		}
+		// Keep the top SUB_BITS + 1 bits; the shift picks the power of two.
+		int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+		return (shift << SUB_BITS) + (int) (value >>> shift);
+	}
+
+	private static long highestInBucket(int bucket) {
+		if (bucket < LINEAR_LIMIT) {
+			return bucket;
+		}
+		int shift = (bucket >> SUB_BITS) - 1;
+		long top = bucket - ((long) shift << SUB_BITS);
+		return ((top + 1) << shift) - 1;
+	}
+}
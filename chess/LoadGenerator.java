@@ -0,0 +1,142 @@
+package chess;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Drives a GameServer with many games at once and reports move latency.
+ *
+ * Every game opens its own connection. Once all of them are connected they
+ * play the benchmark game together, rounds times over with a "reset" in
+ * between. Latency is measured per move from sending the line to reading
+ * the end of the board.
+ *
+ * Usage: java chess.LoadGenerator [-host HOST] [-port N] [-games N] [-rounds N]
+ */
+public class LoadGenerator {
+
+	private static final String LAST_BOARD_LINE = " a  b  c  d  e  f  g  h";
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		String host = "127.0.0.1";
+		int port = GameServer.DEFAULT_PORT;
+		int games = 10_000;
+		int rounds = 5;
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-host") && i + 1 < args.length) {
+				host = args[++i];
+			} else if (args[i].equals("-port") && i + 1 < args.length) {
+				port = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-games") && i + 1 < args.length) {
+				games = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-rounds") && i + 1 < args.length) {
+				rounds = Integer.parseInt(args[++i]);
+			}
+		}
+
+		InetSocketAddress address = new InetSocketAddress(host, port);
+		ExecutorService executor = GameServer.threadPerTaskExecutor();
+		CountDownLatch connected = new CountDownLatch(games);
+		CountDownLatch go = new CountDownLatch(1);
+		List<Future<long[]>> results = new ArrayList<>(games);
+		int movesPerGame = rounds * Benchmarks.SCRIPTED_GAME.length;
+		for (int g = 0; g < games; g++) {
+			int rounds0 = rounds;
+			results.add(executor.submit(() -> play(address, rounds0, movesPerGame, connected, go)));
+		}
+		connected.await();
+		System.out.printf("%d games connected%n", games);
+		long start = System.nanoTime();
+		go.countDown();
+
+		long[] latencies = new long[games * movesPerGame];
+		int size = 0;
+		int failed = 0;
+		for (Future<long[]> result : results) {
+			try {
+				long[] game = result.get();
+				System.arraycopy(game, 0, latencies, size, game.length);
+				size += game.length;
+			} catch (ExecutionException e) {
+				failed++;
+			}
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+		executor.shutdown();
+
+		Arrays.sort(latencies, 0, size);
+		System.out.printf("%d moves in %.3f s: %.0f moves/s, %d games failed%n", size, seconds, size / seconds, failed);
+		if (size > 0) {
+			System.out.printf("latency p50 %.3f ms, p99 %.3f ms, p99.9 %.3f ms, max %.3f ms%n",
+					percentile(latencies, size, 0.50) / 1e6, percentile(latencies, size, 0.99) / 1e6,
+					percentile(latencies, size, 0.999) / 1e6, latencies[size - 1] / 1e6);
+		}
+	}
+
+	// Plays one connection's games and returns the latency of each move in nanoseconds.
+	private static long[] play(InetSocketAddress address, int rounds, int movesPerGame, CountDownLatch connected,
+			CountDownLatch go) throws IOException, InterruptedException {
+		try (Socket socket = new Socket()) {
+			try {
+				socket.connect(address);
+			} finally {
+				connected.countDown();
+			}
+			socket.setTcpNoDelay(true);
+			BufferedReader in = new BufferedReader(
+					new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+			Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+			go.await();
+
+			long[] latencies = new long[movesPerGame];
+			int n = 0;
+			for (int round = 0; round < rounds; round++) {
+				for (String move : Benchmarks.SCRIPTED_GAME) {
+					long start = System.nanoTime();
+					send(out, move);
+					readBoard(in);
+					latencies[n++] = System.nanoTime() - start;
+				}
+				send(out, "reset");
+				readBoard(in);
+			}
+			send(out, "quit");
+			return latencies;
+		}
+	}
+
+	private static void send(Writer out, String line) throws IOException {
+		out.write(line);
+		out.write('\n');
+		out.flush();
+	}
+
+	private static void readBoard(BufferedReader in) throws IOException {
+		String line;
+		while ((line = in.readLine()) != null) {
+			if (line.equals(LAST_BOARD_LINE)) {
+				in.readLine(); // The blank line after the board.
+				return;
+			}
+		}
+		throw new IOException("Server closed the connection");
+	}
+
+	private static long percentile(long[] sorted, int size, double fraction) {
+		return sorted[Math.min(size - 1, (int) (size * fraction))];
+	}
+}
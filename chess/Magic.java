@@ -0,0 +1,181 @@
+package chess;
+
+import java.util.Random;
+
+/**
+ * Rook and bishop attacks by magic bitboard lookup. A bitboard is a long
+ * with bit i set for square i (a1 = 0 ... h8 = 63), the same numbering as
+ * GameSession's board array.
+ *
+ * For each square, the occupied squares that can block a slider there are
+ * masked out, multiplied by that square's magic number and shifted down to
+ * an index into a table of precomputed attack sets, so an attack set costs
+ * an and, a multiply, a shift and an array load. The magic numbers below
+ * came from main; the tables are filled in, and the numbers checked, when
+ * the class loads.
+ *
+ * Usage: java chess.Magic   (searches for magic numbers and prints them)
+ */
+final class Magic {
+
+	private static final int[][] ROOK_STEPS = { { 0, 1 }, { 1, 0 }, { 0, -1 }, { -1, 0 } };
+	private static final int[][] BISHOP_STEPS = { { 1, 1 }, { 1, -1 }, { -1, -1 }, { -1, 1 } };
+
+	private static final long[] ROOK_MAGICS = {
+			0x0080008420144000L, 0x0140001000402000L, 0x8100200100081040L, 0x0580100181040800L,
+			0x0480040002480180L, 0x020002001004C108L, 0x06002600180104ACL, 0x0A00010200804024L,
+			0x1102800320814002L, 0xC000808040002000L, 0x0202802000821000L, 0x4210800800801000L,
+			0x8008808044004800L, 0x0006002418100200L, 0x0A00800200010080L, 0x0202000208804114L,
+			0x0280044002200041L, 0x3010004020004008L, 0x0010002008040022L, 0x8000210008100102L,
+			0x60A2020004110820L, 0x0222008080040002L, 0x00C0840002085110L, 0x02004A0000810454L,
+			0x0080401080008020L, 0x0040200040100048L, 0x0006041200208040L, 0x2010100100210008L,
+			0x5090080080800400L, 0x0022002200042950L, 0x011010040002E108L, 0x0000240200009041L,
+			0x0010400020800080L, 0x0040401000402000L, 0x0200200080801000L, 0x4140080080801003L,
+			0x0000800400800800L, 0x0800040080800200L, 0x1008080284002110L, 0x00A001008A001444L,
+			0x3040002040908000L, 0x1000422010024000L, 0x0040402001010010L, 0x8000100008008080L,
+			0x0084008008028004L, 0x0002000204008080L, 0x0000088210040001L, 0x0280C12080520004L,
+			0x028700800C402B00L, 0x0180200040008080L, 0x80A0008020100080L, 0x0001012010008900L,
+			0x4000040108008180L, 0x000C000402008080L, 0x004B0002002C0900L, 0x0020D42040811200L,
+			0x8844520121004082L, 0x1109150082204001L, 0x0302000820408012L, 0x2081002208041001L,
+			0x0002000804201002L, 0x5101000A28040029L, 0x0100080112489004L, 0x02000E4400288102L };
+	private static final long[] BISHOP_MAGICS = {
+			0x4014281015002108L, 0x0060020882029000L, 0x1104440082102120L, 0x4004410020042802L,
+			0x0011104020140040L, 0x0006074460005020L, 0x48208E0820040201L, 0x0202050401042240L,
+			0x400C401014208AA0L, 0x01C020064A424100L, 0x0012304408424000L, 0x21008808510C0004L,
+			0x0020141420000024L, 0x0004009004202009L, 0x4002008410080450L, 0x2000088280B82000L,
+			0x4040002410828602L, 0x08448030810A1410L, 0x1010032104008110L, 0x0850810802084244L,
+			0x0804000202112040L, 0x4901008610009420L, 0x31A0402411082800L, 0x8402000107620200L,
+			0x2210311041126208L, 0x0295218018020400L, 0x2092010408104400L, 0x0004040000401080L,
+			0x0020404004010041L, 0x80448A0109080618L, 0x008084110A0A0200L, 0x204C00C000A70440L,
+			0x3010106441114400L, 0x0C94115400181000L, 0x1821403000020400L, 0x2000020082480080L,
+			0x2080408020020200L, 0x0020080040068040L, 0x20089D8888190802L, 0x000F820044408408L,
+			0x2084022006089000L, 0x22510101A0401020L, 0x40000A0802009408L, 0x140483C010420200L,
+			0x0449200208811408L, 0x0002220042000100L, 0x00281000D0800201L, 0x044200A519010200L,
+			0x0300421050080002L, 0x00C0540401080004L, 0x4801010088040034L, 0x8400000210540051L,
+			0x400400404822002CL, 0x2080070448020000L, 0x1B2082100A00A000L, 0x4002021802108000L,
+			0xC000248800901000L, 0x0000024100B01100L, 0x1902103044022100L, 0x0000004404228810L,
+			0x0101000008210100L, 0x0025000820089082L, 0x0008091010008120L, 0x9120024202040010L };
+
+	private static final long[] ROOK_MASKS = new long[64];
+	private static final int[] ROOK_SHIFTS = new int[64];
+	private static final long[][] ROOK_ATTACKS = new long[64][];
+	private static final long[] BISHOP_MASKS = new long[64];
+	private static final int[] BISHOP_SHIFTS = new int[64];
+	private static final long[][] BISHOP_ATTACKS = new long[64][];
+
+	static {
+		for (int square = 0; square < 64; square++) {
+			init(square, ROOK_STEPS, ROOK_MAGICS[square], ROOK_MASKS, ROOK_SHIFTS, ROOK_ATTACKS);
+			init(square, BISHOP_STEPS, BISHOP_MAGICS[square], BISHOP_MASKS, BISHOP_SHIFTS, BISHOP_ATTACKS);
+		}
+	}
+
+	private Magic() {
+	}
+
+	static long rookAttacks(int square, long occupied) {
+		return ROOK_ATTACKS[square][(int) (((occupied & ROOK_MASKS[square]) * ROOK_MAGICS[square])
+				>>> ROOK_SHIFTS[square])];
+	}
+
+	static long bishopAttacks(int square, long occupied) {
+		return BISHOP_ATTACKS[square][(int) (((occupied & BISHOP_MASKS[square]) * BISHOP_MAGICS[square])
+				>>> BISHOP_SHIFTS[square])];
+	}
+
+	static long queenAttacks(int square, long occupied) {
+		return rookAttacks(square, occupied) | bishopAttacks(square, occupied);
+	}
+
+	private static void init(int square, int[][] steps, long magic, long[] masks, int[] shifts, long[][] tables) {
+		long mask = relevantSquares(square, steps);
+		long[] table = fill(square, steps, mask, magic);
+		if (table == null) {
+			throw new IllegalStateException("Bad magic number for square " + square);
+		}
+		masks[square] = mask;
+		shifts[square] = 64 - Long.bitCount(mask);
+		tables[square] = table;
+	}
+
+	// Returns the attack table magic gives for square, or null if two
+	// occupancies with different attacks land in the same slot.
+	private static long[] fill(int square, int[][] steps, long mask, long magic) {
+		int bits = Long.bitCount(mask);
+		long[] table = new long[1 << bits];
+		boolean[] used = new boolean[1 << bits];
+		long subset = 0;
+		do { // Every subset of the mask, with the attack set it gives.
+			int index = (int) ((subset * magic) >>> (64 - bits));
+			long attacks = slide(square, steps, subset);
+			if (!used[index]) {
+				used[index] = true;
+				table[index] = attacks;
+			} else if (table[index] != attacks) {
+				return null;
+			}
+			subset = (subset - mask) & mask;
+		} while (subset != 0);
+		return table;
+	}
+
+	// Tries sparse random numbers until one works as a magic for square.
+	private static long find(int square, boolean rook, Random random) {
+		int[][] steps = rook ? ROOK_STEPS : BISHOP_STEPS;
+		long mask = relevantSquares(square, steps);
+		while (true) {
+			long magic = random.nextLong() & random.nextLong() & random.nextLong();
+			if (Long.bitCount((mask * magic) & 0xFF00000000000000L) >= 6
+					&& fill(square, steps, mask, magic) != null) {
+				return magic;
+			}
+		}
+	}
+
+	// The squares whose occupancy can change the attacks: each ray short of the edge.
+	private static long relevantSquares(int square, int[][] steps) {
+		long mask = 0;
+		for (int[] step : steps) {
+			int f = (square & 7) + step[0];
+			int r = (square >> 3) + step[1];
+			while (f + step[0] >= 0 && f + step[0] <= 7 && r + step[1] >= 0 && r + step[1] <= 7) {
+				mask |= 1L << (r * 8 + f);
+				f += step[0];
+				r += step[1];
+			}
+		}
+		return mask;
+	}
+
+	// Walks each ray up to and including the first occupied square.
+	private static long slide(int square, int[][] steps, long occupied) {
+		long attacks = 0;
+		for (int[] step : steps) {
+			int f = (square & 7) + step[0];
+			int r = (square >> 3) + step[1];
+			while (f >= 0 && f <= 7 && r >= 0 && r <= 7) {
+				long bit = 1L << (r * 8 + f);
+				attacks |= bit;
+				if ((occupied & bit) != 0) {
+					break;
+				}
+				f += step[0];
+				r += step[1];
+			}
+		}
+		return attacks;
+	}
+
+	public static void main(String[] args) {
+		Random random = new Random(0x5EED);
+		for (boolean rook : new boolean[] { true, false }) {
+			StringBuilder sb = new StringBuilder(rook ? "ROOK_MAGICS" : "BISHOP_MAGICS").append(" = {");
+			for (int square = 0; square < 64; square++) {
+				sb.append(square % 4 == 0 ? "\n\t\t\t" : " ")
+						.append(String.format("0x%016XL", find(square, rook, random)))
+						.append(square < 63 ? "," : " };\n");
+			}
+			System.out.print(sb);
+		}
+	}
+}
@@ -0,0 +1,115 @@
+package chess;
+
+import java.io.PrintStream;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Opt-in measurements of GameSession.play: latency histograms per phase,
+ * per-move counts of board lookups and attack queries, and the JFR events
+ * MoveEvent and IllegalMoveEvent.
+ *
+ * Turned on with -Dchess.metrics=true, and then a report is printed to
+ * stderr when the JVM exits. ENABLED is a static final constant, so when it
+ * is off the JIT folds every "if (Metrics.ENABLED)" in the move path away
+ * and nothing is measured or allocated.
+ */
+final class Metrics {
+
+	static final boolean ENABLED = Boolean.getBoolean("chess.metrics");
+
+	enum Phase {
+		PARSE, VALIDATE_PAWN, VALIDATE_ROOK, VALIDATE_KNIGHT, VALIDATE_BISHOP, VALIDATE_QUEEN, VALIDATE_KING,
+		ATTACK_CHECK, PROMOTION, PLAY
+	}
+
+	private static final Phase[] PHASES = Phase.values();
+	private static final LatencyHistogram[] LATENCY = new LatencyHistogram[PHASES.length];
+	private static final LatencyHistogram FIND_PIECE_AT_CALLS = new LatencyHistogram();
+	private static final LatencyHistogram ATTACK_QUERIES = new LatencyHistogram();
+	private static final LongAdder MOVES = new LongAdder();
+	private static final LongAdder ILLEGAL_MOVES = new LongAdder();
+
+	static {
+		for (int i = 0; i < LATENCY.length; i++) {
+			LATENCY[i] = new LatencyHistogram();
+		}
+		if (ENABLED) {
+			Runtime.getRuntime().addShutdownHook(new Thread(() -> report(System.err)));
+		}
+	}
+
+	private Metrics() {
+	}
+
+	static void record(Phase phase, long nanos) {
+		LATENCY[phase.ordinal()].record(nanos);
+	}
+
+	/**
+	 * Returns the validation phase for a piece, by the letter in its type name.
+	 */
+	static Phase validation(char pieceType) {
+		switch (pieceType) {
+			case 'P':
+				return Phase.VALIDATE_PAWN;
+			case 'R':
+				return Phase.VALIDATE_ROOK;
+			case 'N':
+				return Phase.VALIDATE_KNIGHT;
+			case 'B':
+				return Phase.VALIDATE_BISHOP;
+			case 'Q':
+				return Phase.VALIDATE_QUEEN;
+			default:
+				return Phase.VALIDATE_KING;
+		}
+	}
+
+	/**
+	 * Records the counters of one finished call to play.
+	 */
+	static void recordMove(boolean legal, int findPieceAtCalls, int attackQueries) {
+		if (legal) {
+			MOVES.increment();
+		} else {
+			ILLEGAL_MOVES.increment();
+		}
+		FIND_PIECE_AT_CALLS.record(findPieceAtCalls);
+		ATTACK_QUERIES.record(attackQueries);
+	}
+
+	static void clear() {
+		for (LatencyHistogram histogram : LATENCY) {
+			histogram.clear();
+		}
+		FIND_PIECE_AT_CALLS.clear();
+		ATTACK_QUERIES.clear();
+		MOVES.reset();
+		ILLEGAL_MOVES.reset();
+	}
+
+	static void report(PrintStream out) {
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format("chess metrics: %d moves, %d illegal%n", MOVES.sum(), ILLEGAL_MOVES.sum()));
+		sb.append(String.format("%-16s %10s %10s %10s %10s %10s %10s %10s%n", "phase (ns)", "count", "mean", "p50",
+				"p90", "p99", "p99.9", "max"));
+		for (Phase phase : PHASES) {
+			appendRow(sb, phase.name().toLowerCase(), LATENCY[phase.ordinal()]);
+		}
+		sb.append(String.format("%-16s %10s %10s %10s %10s %10s %10s %10s%n", "per move", "count", "mean", "p50",
+				"p90", "p99", "p99.9", "max"));
+		appendRow(sb, "findPieceAt", FIND_PIECE_AT_CALLS);
+		appendRow(sb, "attack queries", ATTACK_QUERIES);
+		out.print(sb);
+		out.flush();
+	}
+
+	private static void appendRow(StringBuilder sb, String name, LatencyHistogram histogram) {
+		if (histogram.count() == 0) {
+			return;
+		}
+		sb.append(String.format("%-16s %10d %10.1f %10d %10d %10d %10d %10d%n", name, histogram.count(),
+				histogram.mean(), histogram.percentile(0.5), histogram.percentile(0.9), histogram.percentile(0.99),
+				histogram.percentile(0.999), histogram.max()));
+	}
+}
@@ -0,0 +1,34 @@
+package chess;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event for one call to GameSession.play that made a move. Its duration
+ * is the whole call, so a recording shows which moves were slow and what
+ * they cost in board lookups.
+ */
+@Name("chess.Move")
+@Label("Move")
+@Category("Chess")
+@Description("A move played through GameSession.play")
+class MoveEvent extends Event {
+
+	@Label("Move")
+	String move;
+
+	@Label("Piece")
+	String piece;
+
+	@Label("Result")
+	String result;
+
+	@Label("findPieceAt Calls")
+	int findPieceAtCalls;
+
+	@Label("Attack Queries")
+	int attackQueries;
+}
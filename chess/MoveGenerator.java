@@ -0,0 +1,519 @@
+package chess;
+
+import java.util.ArrayList;
+
+/**
+ * Lists the legal moves in a GameSession.
+ *
+ * Moves are packed into an int: bits 0-5 hold the from square, bits 6-11
+ * the to square (both indexed like the session board, a1 = 0 .. h8 = 63)
+ * and bits 12-14 the promotion piece (0 none, 1 N, 2 B, 3 R, 4 Q). Typed
+ * moves may also carry the DRAW_OFFER or RESIGN flag.
+ */
+final class MoveGenerator {
+
+	// No position has more than 218 legal moves.
+	static final int MAX_MOVES = 256;
+
+	// Flags set by parse on top of the from/to/promotion bits.
+	static final int DRAW_OFFER = 1 << 15;
+	static final int RESIGN = 1 << 16;
+	// What parse returns for text that is not a move.
+	static final int INVALID = -1;
+
+	private static final char[] PROMOTION_CHARS = { 0, 'N', 'B', 'R', 'Q' };
+
+	// File and rank steps of a knight and a king; AttackMap walks the same ones.
+	static final int[][] KNIGHT_STEPS = {
+			{ 1, 2 }, { 2, 1 }, { 2, -1 }, { 1, -2 }, { -1, -2 }, { -2, -1 }, { -2, 1 }, { -1, 2 } };
+	static final int[][] KING_STEPS = {
+			{ 0, 1 }, { 1, 1 }, { 1, 0 }, { 1, -1 }, { 0, -1 }, { -1, -1 }, { -1, 0 }, { -1, 1 } };
+
+	// Bitboards of the squares a piece on each square attacks; pawns by side, white first.
+	private static final long[] KNIGHT_ATTACKS = new long[64];
+	private static final long[] KING_ATTACKS = new long[64];
+	private static final long[][] PAWN_ATTACKS = new long[2][64];
+
+	static {
+		for (int square = 0; square < 64; square++) {
+			KNIGHT_ATTACKS[square] = stepTargets(square, KNIGHT_STEPS);
+			KING_ATTACKS[square] = stepTargets(square, KING_STEPS);
+			PAWN_ATTACKS[0][square] = stepTargets(square, new int[][] { { -1, 1 }, { 1, 1 } });
+			PAWN_ATTACKS[1][square] = stepTargets(square, new int[][] { { -1, -1 }, { 1, -1 } });
+		}
+	}
+
+	private MoveGenerator() {
+	}
+
+	private static long stepTargets(int square, int[][] steps) {
+		long targets = 0;
+		for (int[] step : steps) {
+			int f = (square & 7) + step[0];
+			int r = (square >> 3) + step[1];
+			if (f >= 0 && f <= 7 && r >= 0 && r <= 7) {
+				targets |= 1L << (r * 8 + f);
+			}
+		}
+		return targets;
+	}
+
+	static int encode(int from, int to, int promotion) {
+		return from | (to << 6) | (promotion << 12);
+	}
+
+	static int from(int move) {
+		return move & 63;
+	}
+
+	static int to(int move) {
+		return (move >> 6) & 63;
+	}
+
+	static int promotion(int move) {
+		return (move >> 12) & 7;
+	}
+
+	static char promotionChar(int move) {
+		return PROMOTION_CHARS[promotion(move)];
+	}
+
+	/**
+	 * Writes a move in the notation Chess.play accepts, e.g. "e2 e4" or "b7 b8 N".
+	 */
+	static String toText(int move) {
+		StringBuilder sb = new StringBuilder(7);
+		appendSquare(sb, from(move));
+		sb.append(' ');
+		appendSquare(sb, to(move));
+		if (promotion(move) != 0) {
+			sb.append(' ').append(promotionChar(move));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Reads a move typed as "e2 e4", optionally followed by a promotion piece
+	 * and "draw?", or the word "resign". Works straight off the characters,
+	 * so nothing is allocated, not even for bad input.
+	 *
+	 * @return the encoded move, or INVALID if the text is not a move
+	 */
+	static int parse(CharSequence text) {
+		if (text == null) {
+			return INVALID;
+		}
+		int end = text.length();
+		while (end > 0 && isSpace(text.charAt(end - 1))) {
+			end--;
+		}
+		int i = skipSpaces(text, 0, end);
+		if (i == end) {
+			return INVALID;
+		}
+		if (tokenEquals(text, i, end, "resign") && tokenEnd(text, i, end) == end) {
+			return RESIGN;
+		}
+
+		int from = parseSquare(text, i, end);
+		if (from < 0) {
+			return INVALID;
+		}
+		i = skipSpaces(text, i + 2, end);
+		int to = parseSquare(text, i, end);
+		if (to < 0) {
+			return INVALID;
+		}
+		i = skipSpaces(text, i + 2, end);
+		int move = encode(from, to, 0);
+
+		if (i < end && tokenEnd(text, i, end) == i + 1) {
+			int promotion = promotionCode(text.charAt(i));
+			if (promotion == 0) {
+				return INVALID;
+			}
+			move |= promotion << 12;
+			i = skipSpaces(text, i + 1, end);
+		}
+		if (i < end && tokenEquals(text, i, end, "draw?")) {
+			move |= DRAW_OFFER;
+			i = skipSpaces(text, i + 5, end);
+		}
+		if (i != end) {
+			return INVALID;
+		}
+		return move;
+	}
+
+	/**
+	 * Reads a two-character square such as "e4" starting at offset, which
+	 * must be followed by a space or the end of the text.
+	 *
+	 * @return the square index, or -1 if there is no square there
+	 */
+	static int parseSquare(CharSequence text, int offset, int end) {
+		if (tokenEnd(text, offset, end) != offset + 2) {
+			return -1;
+		}
+		char fileChar = Character.toLowerCase(text.charAt(offset));
+		char rankChar = text.charAt(offset + 1);
+		if (fileChar < 'a' || fileChar > 'h' || rankChar < '1' || rankChar > '8') {
+			return -1;
+		}
+		return (rankChar - '1') * 8 + (fileChar - 'a');
+	}
+
+	private static int promotionCode(char c) {
+		switch (Character.toUpperCase(c)) {
+			case 'N':
+				return 1;
+			case 'B':
+				return 2;
+			case 'R':
+				return 3;
+			case 'Q':
+				return 4;
+			default:
+				return 0;
+		}
+	}
+
+	private static boolean tokenEquals(CharSequence text, int offset, int end, String token) {
+		if (tokenEnd(text, offset, end) != offset + token.length()) {
+			return false;
+		}
+		for (int i = 0; i < token.length(); i++) {
+			if (text.charAt(offset + i) != token.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static int tokenEnd(CharSequence text, int offset, int end) {
+		while (offset < end && !isSpace(text.charAt(offset))) {
+			offset++;
+		}
+		return offset;
+	}
+
+	private static int skipSpaces(CharSequence text, int offset, int end) {
+		while (offset < end && isSpace(text.charAt(offset))) {
+			offset++;
+		}
+		return offset;
+	}
+
+	private static boolean isSpace(char c) {
+		// Same set as the regex class \\s.
+		return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f' || c == '\u000B';
+	}
+
+	private static void appendSquare(StringBuilder sb, int square) {
+		sb.append((char) ('a' + (square & 7))).append((char) ('1' + (square >> 3)));
+	}
+
+	/**
+	 * Returns the legal moves for the player to move, in "e2 e4" notation.
+	 */
+	static ArrayList<String> legalMoves(GameSession session) {
+		int[] moves = new int[MAX_MOVES];
+		int count = generateLegal(session, moves);
+		ArrayList<String> result = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			result.add(toText(moves[i]));
+		}
+		return result;
+	}
+
+	/**
+	 * Fills moves with every legal move for the player to move.
+	 *
+	 * @return the number of moves written
+	 */
+	static int generateLegal(GameSession session, int[] moves) {
+		int count = generatePseudoLegal(session, moves);
+		GameSession.Player mover = session.getTurn();
+		int legal = 0;
+		for (int i = 0; i < count; i++) {
+			session.makeMove(moves[i]);
+			if (!session.isInCheck(mover)) {
+				moves[legal++] = moves[i];
+			}
+			session.unmakeMove();
+		}
+		return legal;
+	}
+
+	/**
+	 * Returns whether the player to move has any legal move, stopping at the
+	 * first one found: king moves first, then, when in check, captures of
+	 * the checking piece and then blocks. Everything is read from the
+	 * session's attack map and bitboards and nothing is changed, so this is
+	 * cheap enough to run after every move.
+	 */
+	static boolean hasLegalMove(GameSession session) {
+		AttackMap map = session.attackMap();
+		int us = session.getTurn() == GameSession.Player.white ? AttackMap.WHITE : AttackMap.BLACK;
+		int them = 1 - us;
+		long own = map.pieces(us);
+		long ownKing = map.kings() & own;
+		if (ownKing == 0) { // Nothing to mate; only set-up positions lack a king.
+			return true;
+		}
+		int king = Long.numberOfTrailingZeros(ownKing);
+		int checks = map.attackers(them, king);
+
+		// King moves. Out of check, the attack counts are enough.
+		long kingTargets = KING_ATTACKS[king] & ~own;
+		if (checks == 0) {
+			for (long targets = kingTargets; targets != 0; targets &= targets - 1) {
+				if (!map.isAttacked(them, Long.numberOfTrailingZeros(targets))) {
+					return true;
+				}
+			}
+			return anyMoveTo(session, map, us, king, ~own);
+		}
+		// In check, a slider's line goes on past the king, so look again without it.
+		long withoutKing = map.occupied() & ~ownKing;
+		for (long targets = kingTargets; targets != 0; targets &= targets - 1) {
+			if (attackers(map, them, Long.numberOfTrailingZeros(targets), withoutKing) == 0) {
+				return true;
+			}
+		}
+		if (checks > 1) { // Double check: only the king could have moved.
+			return false;
+		}
+		long checkers = attackers(map, them, king, map.occupied());
+		if (anyMoveTo(session, map, us, king, checkers)) {
+			return true;
+		}
+		// A rook, bishop or queen giving check can also be blocked.
+		int checker = Long.numberOfTrailingZeros(checkers);
+		long occupied = map.occupied();
+		long between = 0;
+		if ((Magic.rookAttacks(king, occupied) & checkers & map.rooksAndQueens()) != 0) {
+			between = Magic.rookAttacks(king, occupied) & Magic.rookAttacks(checker, occupied);
+		} else if ((Magic.bishopAttacks(king, occupied) & checkers & map.bishopsAndQueens()) != 0) {
+			between = Magic.bishopAttacks(king, occupied) & Magic.bishopAttacks(checker, occupied);
+		}
+		return between != 0 && anyMoveTo(session, map, us, king, between);
+	}
+
+	// The pieces of side that attack square, with sliders looked up through occupied.
+	private static long attackers(AttackMap map, int side, int square, long occupied) {
+		long pieces = map.pieces(side);
+		return ((KNIGHT_ATTACKS[square] & map.knights()) | (PAWN_ATTACKS[1 - side][square] & map.pawns())
+				| (KING_ATTACKS[square] & map.kings()) | sliderAttackers(map, pieces, square, occupied)) & pieces;
+	}
+
+	private static long sliderAttackers(AttackMap map, long pieces, int square, long occupied) {
+		return ((Magic.rookAttacks(square, occupied) & map.rooksAndQueens())
+				| (Magic.bishopAttacks(square, occupied) & map.bishopsAndQueens())) & pieces;
+	}
+
+	// Whether any piece of side but the king has a legal move ending on one of squares.
+	private static boolean anyMoveTo(GameSession session, AttackMap map, int side, int king, long squares) {
+		long occupied = map.occupied();
+		long own = map.pieces(side);
+		long pieces = own & ~map.pawns() & ~map.kings();
+		for (; pieces != 0; pieces &= pieces - 1) {
+			int from = Long.numberOfTrailingZeros(pieces);
+			long bit = 1L << from;
+			long targets = 0;
+			if ((map.knights() & bit) != 0) {
+				targets = KNIGHT_ATTACKS[from];
+			}
+			if ((map.rooksAndQueens() & bit) != 0) {
+				targets |= Magic.rookAttacks(from, occupied);
+			}
+			if ((map.bishopsAndQueens() & bit) != 0) {
+				targets |= Magic.bishopAttacks(from, occupied);
+			}
+			if (anyLegal(map, side, king, from, targets & ~own & squares, 0)) {
+				return true;
+			}
+		}
+		int forward = side == AttackMap.WHITE ? 8 : -8;
+		int startRank = side == AttackMap.WHITE ? 1 : 6;
+		int enPassant = session.getEnPassantSquare();
+		for (long pawns = own & map.pawns(); pawns != 0; pawns &= pawns - 1) {
+			int from = Long.numberOfTrailingZeros(pawns);
+			long targets = PAWN_ATTACKS[side][from] & occupied & ~own;
+			int push = from + forward;
+			if (push >= 0 && push < 64 && (occupied & (1L << push)) == 0) {
+				targets |= 1L << push;
+				if (from >> 3 == startRank && (occupied & (1L << (push + forward))) == 0) {
+					targets |= 1L << (push + forward);
+				}
+			}
+			if (anyLegal(map, side, king, from, targets & squares, 0)) {
+				return true;
+			}
+			// En passant lands beside the captured pawn, so it counts for either square.
+			if (enPassant >= 0 && (PAWN_ATTACKS[side][from] & (1L << enPassant)) != 0) {
+				long captured = 1L << (enPassant - forward);
+				if ((squares & ((1L << enPassant) | captured)) != 0
+						&& anyLegal(map, side, king, from, 1L << enPassant, captured)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	// Whether moving from one square to one of targets leaves the king out of
+	// reach of every enemy slider. The extra square is emptied as well.
+	private static boolean anyLegal(AttackMap map, int side, int king, int from, long targets, long extra) {
+		long enemy = map.pieces(1 - side);
+		for (; targets != 0; targets &= targets - 1) {
+			long to = targets & -targets;
+			long after = (map.occupied() & ~(1L << from) & ~extra) | to;
+			if (sliderAttackers(map, enemy & ~to, king, after) == 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Fills moves with every move that follows the piece rules, including
+	 * ones that leave the mover's own king in check.
+	 *
+	 * @return the number of moves written
+	 */
+	static int generatePseudoLegal(GameSession session, int[] moves) {
+		boolean white = session.getTurn() == GameSession.Player.white;
+		int count = 0;
+		long occupied = session.occupied();
+		for (int square = 0; square < 64; square++) {
+			ReturnPiece piece = session.pieceAt(square);
+			if (piece == null || isWhite(piece) != white) {
+				continue;
+			}
+			switch (piece.pieceType) {
+				case WP:
+				case BP:
+					count = addPawnMoves(session, square, white, moves, count);
+					break;
+				case WN:
+				case BN:
+					count = addSteps(session, square, white, KNIGHT_STEPS, moves, count);
+					break;
+				case WB:
+				case BB:
+					count = addTargets(session, square, white, Magic.bishopAttacks(square, occupied), moves, count);
+					break;
+				case WR:
+				case BR:
+					count = addTargets(session, square, white, Magic.rookAttacks(square, occupied), moves, count);
+					break;
+				case WQ:
+				case BQ:
+					count = addTargets(session, square, white, Magic.queenAttacks(square, occupied), moves, count);
+					break;
+				case WK:
+				case BK:
+					count = addSteps(session, square, white, KING_STEPS, moves, count);
+					count = addCastles(session, piece, square, moves, count);
+					break;
+				default:
+					break;
+			}
+		}
+		return count;
+	}
+
+	private static int addPawnMoves(GameSession session, int square, boolean white, int[] moves, int count) {
+		int file = square & 7;
+		int rank = square >> 3;
+		int forward = white ? 1 : -1;
+		int startRank = white ? 1 : 6;
+		int nextRank = rank + forward;
+
+		// Pushes only go to empty squares; a pawn on its start rank may step twice.
+		int oneStep = nextRank * 8 + file;
+		if (session.pieceAt(oneStep) == null) {
+			count = addPawnMove(square, oneStep, moves, count);
+			int twoSteps = oneStep + forward * 8;
+			if (rank == startRank && session.pieceAt(twoSteps) == null) {
+				moves[count++] = encode(square, twoSteps, 0);
+			}
+		}
+
+		// Captures go one file sideways, including en passant onto the skipped square.
+		for (int side = -1; side <= 1; side += 2) {
+			int targetFile = file + side;
+			if (targetFile < 0 || targetFile > 7) {
+				continue;
+			}
+			int target = nextRank * 8 + targetFile;
+			ReturnPiece victim = session.pieceAt(target);
+			if ((victim != null && isWhite(victim) != white) || target == session.getEnPassantSquare()) {
+				count = addPawnMove(square, target, moves, count);
+			}
+		}
+		return count;
+	}
+
+	private static int addPawnMove(int from, int to, int[] moves, int count) {
+		int toRank = to >> 3;
+		if (toRank == 0 || toRank == 7) { // Reaching the last rank means choosing a promotion.
+			for (int promotion = 4; promotion >= 1; promotion--) {
+				moves[count++] = encode(from, to, promotion);
+			}
+		} else {
+			moves[count++] = encode(from, to, 0);
+		}
+		return count;
+	}
+
+	private static int addSteps(GameSession session, int square, boolean white, int[][] steps, int[] moves,
+			int count) {
+		int file = square & 7;
+		int rank = square >> 3;
+		for (int[] step : steps) {
+			int f = file + step[0];
+			int r = rank + step[1];
+			if (f < 0 || f > 7 || r < 0 || r > 7) {
+				continue;
+			}
+			ReturnPiece target = session.pieceAt(r * 8 + f);
+			if (target == null || isWhite(target) != white) {
+				moves[count++] = encode(square, r * 8 + f, 0);
+			}
+		}
+		return count;
+	}
+
+	// Adds a move to each attacked square that is empty or holds an opposing piece.
+	private static int addTargets(GameSession session, int square, boolean white, long attacked, int[] moves,
+			int count) {
+		for (; attacked != 0; attacked &= attacked - 1) {
+			int to = Long.numberOfTrailingZeros(attacked);
+			ReturnPiece target = session.pieceAt(to);
+			if (target == null || isWhite(target) != white) {
+				moves[count++] = encode(square, to, 0);
+			}
+		}
+		return count;
+	}
+
+	private static int addCastles(GameSession session, ReturnPiece king, int square, int[] moves, int count) {
+		// Same rules as a typed castling move: king on its home square, two files over.
+		if ((square & 7) != 4) {
+			return count;
+		}
+		if (session.canCastle(king, ReturnPiece.PieceFile.g)) {
+			moves[count++] = encode(square, square + 2, 0);
+		}
+		if (session.canCastle(king, ReturnPiece.PieceFile.c)) {
+			moves[count++] = encode(square, square - 2, 0);
+		}
+		return count;
+	}
+
+	private static boolean isWhite(ReturnPiece p) {
+		return p.pieceType.name().charAt(0) == 'W';
+	}
+}
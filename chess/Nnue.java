@@ -0,0 +1,305 @@
+package chess;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * An efficiently updatable neural network evaluation (NNUE): one hidden
+ * layer fed by 768 inputs, one per (own or opposing piece kind, square),
+ * seen from each side's point of view, and a single output.
+ *
+ * The hidden layer's sums depend only on which inputs are on, so each
+ * session keeps them in an NnueAccumulator and adds or subtracts one
+ * weight column whenever a piece appears on or leaves a square. A full
+ * evaluation is then only the output layer: clip both sides' sums to
+ * 0..CLIP, multiply by the output weights and add up, side to move first.
+ *
+ * Weights live in a file: the magic "NNU1", then the hidden size, the
+ * output divisor and the output bias as ints, then as shorts the input
+ * weights (768 rows of hidden size), the hidden biases and the output
+ * weights (twice the hidden size, side to move first), all big-endian.
+ * Output weights must lie within -127..127 so each product fits a short.
+ *
+ * Sums are added with jdk.incubator.vector when the class NnueVector from
+ * vector/ is on the class path and the JVM runs with --add-modules
+ * jdk.incubator.vector; otherwise with plain loops. mvn -B compile builds
+ * it into target/classes next to the rest; run with:
+ *   java --add-modules jdk.incubator.vector -cp target/classes ...
+ * -Dchess.nnue.scalar=true forces the plain loops.
+ *
+ * Usage: java chess.Nnue init out.nnue [hidden]  (writes a network that
+ *        computes the same scores as Evaluator)
+ *        java chess.Nnue bench file.nnue          (evaluations per second)
+ */
+final class Nnue {
+
+	static final int MAGIC = 0x4E4E5531; // "NNU1"
+	static final int INPUTS = 768;
+	static final int CLIP = 255;
+	static final int MAX_OUTPUT_WEIGHT = 127;
+
+	/**
+	 * The arithmetic on hidden-layer sums, in plain loops or SIMD.
+	 */
+	interface Kernel {
+		void add(short[] sums, short[] weights, int offset);
+
+		void subtract(short[] sums, short[] weights, int offset);
+
+		/**
+		 * Returns the clipped sums of us and them dotted with weights, us
+		 * against the first half.
+		 */
+		int output(short[] us, short[] them, short[] weights);
+	}
+
+	static final Kernel KERNEL = loadKernel();
+
+	// Input kind by PieceType ordinal: pawn, knight, bishop, rook, queen, king.
+	private static final int[] KIND = new int[ReturnPiece.PieceType.values().length];
+
+	static {
+		for (ReturnPiece.PieceType type : ReturnPiece.PieceType.values()) {
+			KIND[type.ordinal()] = "PNBRQK".indexOf(type.name().charAt(1));
+		}
+	}
+
+	final int hidden;
+	final int divisor;
+	final int outputBias;
+	final short[] inputWeights;
+	final short[] biases;
+	final short[] outputWeights;
+
+	Nnue(int hidden, int divisor, int outputBias, short[] inputWeights, short[] biases, short[] outputWeights) {
+		if (hidden <= 0 || divisor <= 0 || inputWeights.length != INPUTS * hidden || biases.length != hidden
+				|| outputWeights.length != 2 * hidden) {
+			throw new IllegalArgumentException("Inconsistent network sizes");
+		}
+		for (short w : outputWeights) {
+			if (w < -MAX_OUTPUT_WEIGHT || w > MAX_OUTPUT_WEIGHT) {
+				throw new IllegalArgumentException("Output weight out of range: " + w);
+			}
+		}
+		this.hidden = hidden;
+		this.divisor = divisor;
+		this.outputBias = outputBias;
+		this.inputWeights = inputWeights;
+		this.biases = biases;
+		this.outputWeights = outputWeights;
+	}
+
+	/**
+	 * Returns where the weights for a piece on square start in inputWeights,
+	 * as seen by side (AttackMap.WHITE or BLACK). Black sees the board
+	 * upside down, so both sides see their own pieces start on ranks 1-2.
+	 */
+	int offset(int side, ReturnPiece.PieceType type, int square) {
+		boolean white = type.name().charAt(0) == 'W';
+		int owner = white == (side == AttackMap.WHITE) ? 0 : 6;
+		int seen = side == AttackMap.WHITE ? square : square ^ 56;
+		return ((owner + KIND[type.ordinal()]) * 64 + seen) * hidden;
+	}
+
+	static Nnue load(Path file) throws IOException {
+		ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(file)).order(ByteOrder.BIG_ENDIAN);
+		if (data.remaining() < 16 || data.getInt() != MAGIC) {
+			throw new IOException(file + " is not a network file");
+		}
+		int hidden = data.getInt();
+		int divisor = data.getInt();
+		int outputBias = data.getInt();
+		if (hidden <= 0 || hidden > 4096 || data.remaining() != 2L * (INPUTS + 3) * hidden) {
+			throw new IOException(file + " has the wrong size for a hidden layer of " + hidden);
+		}
+		ShortBuffer shorts = data.asShortBuffer();
+		short[] inputWeights = new short[INPUTS * hidden];
+		short[] biases = new short[hidden];
+		short[] outputWeights = new short[2 * hidden];
+		shorts.get(inputWeights).get(biases).get(outputWeights);
+		try {
+			return new Nnue(hidden, divisor, outputBias, inputWeights, biases, outputWeights);
+		} catch (IllegalArgumentException e) {
+			throw new IOException(file + ": " + e.getMessage(), e);
+		}
+	}
+
+	void write(Path file) throws IOException {
+		try (OutputStream stream = Files.newOutputStream(file);
+				DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream))) {
+			out.writeInt(MAGIC);
+			out.writeInt(hidden);
+			out.writeInt(divisor);
+			out.writeInt(outputBias);
+			for (short w : inputWeights) {
+				out.writeShort(w);
+			}
+			for (short b : biases) {
+				out.writeShort(b);
+			}
+			for (short w : outputWeights) {
+				out.writeShort(w);
+			}
+		}
+	}
+
+	/**
+	 * Builds a network that scores exactly like Evaluator, so the file
+	 * format and the incremental updates can be used before a trained
+	 * network exists. Hidden units come in pairs that carry +x and -x of a
+	 * share of the score, so clipping at zero loses nothing while the score
+	 * stays within CLIP times the number of pairs.
+	 */
+	static Nnue fromEvaluator(int hidden) {
+		if (hidden < 2 || hidden % 2 != 0) {
+			throw new IllegalArgumentException("Hidden size must be even: " + hidden);
+		}
+		int pairs = hidden / 2;
+		short[] inputWeights = new short[INPUTS * hidden];
+		short[] biases = new short[hidden];
+		short[] outputWeights = new short[2 * hidden];
+		Nnue network = new Nnue(hidden, 1, 0, inputWeights, biases, outputWeights);
+		for (ReturnPiece.PieceType type : ReturnPiece.PieceType.values()) {
+			for (int square = 0; square < 64; square++) {
+				int value = Evaluator.pieceSquareValue(type, square);
+				for (int side = AttackMap.WHITE; side <= AttackMap.BLACK; side++) {
+					int v = type.name().charAt(0) == (side == AttackMap.WHITE ? 'W' : 'B') ? value : -value;
+					int offset = network.offset(side, type, square);
+					// floor((v + p) / pairs) over p = 0 .. pairs-1 adds up to v exactly.
+					for (int p = 0; p < pairs; p++) {
+						int share = Math.floorDiv(v + p, pairs);
+						inputWeights[offset + 2 * p] = (short) share;
+						inputWeights[offset + 2 * p + 1] = (short) -share;
+					}
+				}
+			}
+		}
+		for (int p = 0; p < pairs; p++) { // Only the side to move's half counts.
+			outputWeights[2 * p] = 1;
+			outputWeights[2 * p + 1] = -1;
+		}
+		return network;
+	}
+
+	private static Kernel loadKernel() {
+		if (!Boolean.getBoolean("chess.nnue.scalar")) {
+			try {
+				return (Kernel) Class.forName("chess.NnueVector").getDeclaredConstructor().newInstance();
+			} catch (ReflectiveOperationException | LinkageError e) {
+				// Not built, or jdk.incubator.vector not added: use the loops below.
+			}
+		}
+		return new ScalarKernel();
+	}
+
+	static final class ScalarKernel implements Kernel {
+		@Override
+		public void add(short[] sums, short[] weights, int offset) {
+			for (int i = 0; i < sums.length; i++) {
+				sums[i] += weights[offset + i];
+			}
+		}
+
+		@Override
+		public void subtract(short[] sums, short[] weights, int offset) {
+			for (int i = 0; i < sums.length; i++) {
+				sums[i] -= weights[offset + i];
+			}
+		}
+
+		@Override
+		public int output(short[] us, short[] them, short[] weights) {
+			int n = us.length;
+			int sum = 0;
+			for (int i = 0; i < n; i++) {
+				sum += Math.min(Math.max(us[i], 0), CLIP) * weights[i];
+			}
+			for (int i = 0; i < n; i++) {
+				sum += Math.min(Math.max(them[i], 0), CLIP) * weights[n + i];
+			}
+			return sum;
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length >= 2 && args[0].equals("init")) {
+			int hidden = args.length > 2 ? Integer.parseInt(args[2]) : 256;
+			fromEvaluator(hidden).write(Paths.get(args[1]));
+			System.out.println("Wrote a " + hidden + "-unit network to " + args[1]);
+		} else if (args.length >= 2 && args[0].equals("bench")) {
+			bench(load(Paths.get(args[1])));
+		} else {
+			System.err.println("Usage: java chess.Nnue init out.nnue [hidden] | bench file.nnue");
+		}
+	}
+
+	// Checks the network against Evaluator over a perft tree below kiwipete,
+	// then times its parts on kiwipete itself.
+	private static void bench(Nnue network) {
+		System.out.println("hidden " + network.hidden + ", kernel " + KERNEL.getClass().getSimpleName());
+		GameSession session = new GameSession();
+		new Fen().load(session, Perft.KIWIPETE);
+		session.setNetwork(network);
+		long[] counts = new long[2];
+		walk(session, 3, new int[4][MoveGenerator.MAX_MOVES], counts);
+		System.out.printf("differs from Evaluator at %d of %d nodes%n", counts[1], counts[0]);
+
+		NnueAccumulator accumulator = session.network();
+		ReturnPiece.PieceType knight = ReturnPiece.PieceType.WN;
+		int from = 28; // The knight on e5 and an empty square it can reach.
+		int to = 42;
+		for (int round = 0; round < 5; round++) {
+			int n = 2_000_000;
+			long total = 0;
+			long start = System.nanoTime();
+			for (int i = 0; i < n; i++) {
+				total += accumulator.evaluate(GameSession.Player.white);
+			}
+			double evaluate = (System.nanoTime() - start) / 1e9;
+			start = System.nanoTime();
+			for (int i = 0; i < n; i += 2) { // A quiet move and back, evaluated after each.
+				accumulator.remove(knight, from);
+				accumulator.add(knight, to);
+				total += accumulator.evaluate(GameSession.Player.black);
+				accumulator.remove(knight, to);
+				accumulator.add(knight, from);
+				total += accumulator.evaluate(GameSession.Player.white);
+			}
+			double update = (System.nanoTime() - start) / 1e9;
+			int refreshes = n / 20;
+			NnueAccumulator scratch = new NnueAccumulator(network);
+			start = System.nanoTime();
+			for (int i = 0; i < refreshes; i++) {
+				scratch.refresh(session);
+				total += scratch.evaluate(GameSession.Player.white);
+			}
+			double refresh = (System.nanoTime() - start) / 1e9;
+			System.out.printf("evaluate %.0f/s, update+evaluate %.0f/s, refresh+evaluate %.0f/s (checksum %d)%n",
+					n / evaluate, n / update, refreshes / refresh, total % 10);
+		}
+	}
+
+	private static void walk(GameSession session, int depth, int[][] moves, long[] counts) {
+		counts[0]++;
+		if (Evaluator.evaluate(session) != Evaluator.evaluateTables(session)) {
+			counts[1]++;
+		}
+		if (depth == 0) {
+			return;
+		}
+		int count = MoveGenerator.generateLegal(session, moves[depth]);
+		for (int i = 0; i < count; i++) {
+			session.makeMove(moves[depth][i]);
+			walk(session, depth - 1, moves, counts);
+			session.unmakeMove();
+		}
+	}
+}
@@ -0,0 +1,118 @@
+package chess;
+
+/**
+ * The hidden-layer sums of an Nnue network for one position, from both
+ * sides' points of view. GameSession keeps one in step with its board by
+ * calling remove and add around every change to a square, so a move costs
+ * a few column additions instead of a pass over all 768 inputs.
+ *
+ * Changes are queued and only applied when the position is evaluated. A
+ * change that undoes the last queued one cancels it instead, so a move
+ * made and taken back unevaluated, as when MoveGenerator tests moves for
+ * legality, costs nothing.
+ */
+final class NnueAccumulator {
+
+	private static final int QUEUE_SIZE = 64;
+	private static final int ADD = 1 << 10;
+	private static final ReturnPiece.PieceType[] TYPES = ReturnPiece.PieceType.values();
+
+	private final Nnue network;
+	private final short[][] sums;
+	// Queued changes: square in bits 0-5, PieceType ordinal in 6-9, and ADD.
+	private final int[] queue;
+	private int queued;
+
+	NnueAccumulator(Nnue network) {
+		this.network = network;
+		sums = new short[2][network.hidden];
+		queue = new int[QUEUE_SIZE];
+		clear();
+	}
+
+	/**
+	 * Copies another accumulator, for a session that holds the same position.
+	 */
+	NnueAccumulator(NnueAccumulator other) {
+		network = other.network;
+		sums = new short[][] { other.sums[AttackMap.WHITE].clone(), other.sums[AttackMap.BLACK].clone() };
+		queue = other.queue.clone();
+		queued = other.queued;
+	}
+
+	Nnue network() {
+		return network;
+	}
+
+	/**
+	 * Resets to an empty board: just the biases.
+	 */
+	void clear() {
+		System.arraycopy(network.biases, 0, sums[AttackMap.WHITE], 0, network.hidden);
+		System.arraycopy(network.biases, 0, sums[AttackMap.BLACK], 0, network.hidden);
+		queued = 0;
+	}
+
+	/**
+	 * Recomputes the sums from every piece in session.
+	 */
+	void refresh(GameSession session) {
+		clear();
+		for (int square = 0; square < 64; square++) {
+			ReturnPiece piece = session.pieceAt(square);
+			if (piece != null) {
+				add(piece.pieceType, square);
+			}
+		}
+	}
+
+	void add(ReturnPiece.PieceType type, int square) {
+		change(type.ordinal() << 6 | square | ADD);
+	}
+
+	void remove(ReturnPiece.PieceType type, int square) {
+		change(type.ordinal() << 6 | square);
+	}
+
+	private void change(int change) {
+		if (queued > 0 && queue[queued - 1] == (change ^ ADD)) {
+			queued--;
+			return;
+		}
+		if (queued == QUEUE_SIZE) {
+			flush();
+		}
+		queue[queued++] = change;
+	}
+
+	// Applies the queued changes to the sums.
+	private void flush() {
+		for (int i = 0; i < queued; i++) {
+			int change = queue[i];
+			ReturnPiece.PieceType type = TYPES[(change >> 6) & 15];
+			int square = change & 63;
+			int white = network.offset(AttackMap.WHITE, type, square);
+			int black = network.offset(AttackMap.BLACK, type, square);
+			if ((change & ADD) != 0) {
+				Nnue.KERNEL.add(sums[AttackMap.WHITE], network.inputWeights, white);
+				Nnue.KERNEL.add(sums[AttackMap.BLACK], network.inputWeights, black);
+			} else {
+				Nnue.KERNEL.subtract(sums[AttackMap.WHITE], network.inputWeights, white);
+				Nnue.KERNEL.subtract(sums[AttackMap.BLACK], network.inputWeights, black);
+			}
+		}
+		queued = 0;
+	}
+
+	/**
+	 * Scores the position in centipawns for toMove; positive is good for them.
+	 */
+	int evaluate(GameSession.Player toMove) {
+		if (queued > 0) {
+			flush();
+		}
+		int us = toMove == GameSession.Player.white ? AttackMap.WHITE : AttackMap.BLACK;
+		int sum = Nnue.KERNEL.output(sums[us], sums[1 - us], network.outputWeights);
+		return (sum + network.outputBias) / network.divisor;
+	}
+}
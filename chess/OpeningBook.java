@@ -0,0 +1,302 @@
+package chess;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Opening book in the Polyglot .bin layout: 16-byte big-endian entries of
+ * key, move, weight and learn, sorted by key. The file is memory-mapped, so
+ * opening it reads nothing and a book of any size up to 2 GB costs no heap;
+ * a lookup is a binary search over the mapped entries.
+ *
+ * Keys are Polyglot's own (see PolyglotKey), so any Polyglot book can be
+ * probed, and books made from recorded games with the build command below
+ * work in other Polyglot tools. Moves use the Polyglot encoding: to square
+ * in bits 0-5, from square in bits 6-11 and promotion in bits 12-14, with
+ * castling written as the king taking its own rook.
+ *
+ * Usage: java chess.OpeningBook build book.bin [-plies N] file...
+ *        java chess.OpeningBook probe book.bin ["e2 e4" ...]
+ */
+final class OpeningBook implements Closeable {
+
+	static final int ENTRY_SIZE = 16;
+
+	private final FileChannel channel;
+	private final MappedByteBuffer entries;
+	private final int count;
+
+	private OpeningBook(FileChannel channel, MappedByteBuffer entries) {
+		this.channel = channel;
+		this.entries = entries;
+		this.count = entries.capacity() / ENTRY_SIZE;
+	}
+
+	static OpeningBook open(Path file) throws IOException {
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+		try {
+			long size = channel.size();
+			if (size > Integer.MAX_VALUE || size % ENTRY_SIZE != 0) {
+				throw new IOException(file + " is not a book of " + ENTRY_SIZE + "-byte entries under 2 GB");
+			}
+			MappedByteBuffer entries = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			entries.order(ByteOrder.BIG_ENDIAN);
+			return new OpeningBook(channel, entries);
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	int size() {
+		return count;
+	}
+
+	/**
+	 * Copies the moves and weights stored for a position key, heaviest first
+	 * as they are in the file.
+	 *
+	 * @return the number of entries found, at most moves.length
+	 */
+	int lookup(long key, int[] moves, int[] weights) {
+		// First entry whose key is not below the one we want, comparing unsigned.
+		int low = 0;
+		int high = count;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (Long.compareUnsigned(entries.getLong(mid * ENTRY_SIZE), key) < 0) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		int found = 0;
+		for (int i = low; i < count && found < moves.length; i++) {
+			int offset = i * ENTRY_SIZE;
+			if (entries.getLong(offset) != key) {
+				break;
+			}
+			moves[found] = entries.getShort(offset + 8) & 0xFFFF;
+			weights[found] = entries.getShort(offset + 10) & 0xFFFF;
+			found++;
+		}
+		return found;
+	}
+
+	/**
+	 * Returns the book moves for the position, in "e2 e4" notation, heaviest
+	 * first.
+	 */
+	List<String> moves(GameSession session) {
+		int[] moves = new int[MoveGenerator.MAX_MOVES];
+		int[] weights = new int[MoveGenerator.MAX_MOVES];
+		int found = lookup(PolyglotKey.of(session), moves, weights);
+		List<String> result = new ArrayList<>(found);
+		for (int i = 0; i < found; i++) {
+			result.add(MoveGenerator.toText(fromBook(session, moves[i])));
+		}
+		return result;
+	}
+
+	/**
+	 * Picks a book move for the position at random, in proportion to the
+	 * weights.
+	 *
+	 * @return the move in "e2 e4" notation, or null when out of book
+	 */
+	String pick(GameSession session, Random random) {
+		int[] moves = new int[MoveGenerator.MAX_MOVES];
+		int[] weights = new int[MoveGenerator.MAX_MOVES];
+		int found = lookup(PolyglotKey.of(session), moves, weights);
+		int total = 0;
+		for (int i = 0; i < found; i++) {
+			total += weights[i];
+		}
+		if (total == 0) {
+			return null;
+		}
+		int r = random.nextInt(total);
+		for (int i = 0; i < found; i++) {
+			r -= weights[i];
+			if (r < 0) {
+				return MoveGenerator.toText(fromBook(session, moves[i]));
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	/**
+	 * Turns a Polyglot book move into this engine's encoding.
+	 */
+	static int fromBook(GameSession session, int bookMove) {
+		int to = bookMove & 63;
+		int from = (bookMove >> 6) & 63;
+		int promotion = (bookMove >> 12) & 7;
+		ReturnPiece king = session.pieceAt(from);
+		ReturnPiece rook = session.pieceAt(to);
+		if (king != null && rook != null && king.pieceType.name().charAt(1) == 'K'
+				&& rook.pieceType.name().charAt(1) == 'R'
+				&& king.pieceType.name().charAt(0) == rook.pieceType.name().charAt(0)) {
+			// King takes own rook means castling; the king lands two files over.
+			if (to > from) {
+				to = from + 2;
+			} else {
+				to = from - 2;
+			}
+		}
+		return MoveGenerator.encode(from, to, promotion);
+	}
+
+	/**
+	 * Turns one of this engine's moves into the Polyglot book encoding.
+	 */
+	static int toBook(GameSession session, int move) {
+		int from = MoveGenerator.from(move);
+		int to = MoveGenerator.to(move);
+		ReturnPiece piece = session.pieceAt(from);
+		if (piece != null && piece.pieceType.name().charAt(1) == 'K' && Math.abs(to - from) == 2) {
+			if (to > from) {
+				to = from | 7;
+			} else {
+				to = from & ~7;
+			}
+		}
+		return to | (from << 6) | (MoveGenerator.promotion(move) << 12);
+	}
+
+	/**
+	 * Writes a book of every move played in the first plies of the given
+	 * games, weighted by how often it was played.
+	 *
+	 * @return the number of entries written
+	 */
+	static int build(Path out, List<Path> gameFiles, int plies) throws IOException {
+		Map<Long, Map<Integer, Integer>> counts = new HashMap<>();
+		GameSession session = new GameSession();
+		for (Path file : gameFiles) {
+			try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+				session.start();
+				int ply = 0;
+				String line;
+				while ((line = in.readLine()) != null) {
+					String trimmed = line.trim();
+					if (trimmed.equals("quit")) {
+						break;
+					}
+					if (trimmed.isEmpty() || trimmed.equals("reset")) { // Next game.
+						session.start();
+						ply = 0;
+						continue;
+					}
+					if (ply >= plies) {
+						continue;
+					}
+					int move = MoveGenerator.parse(trimmed);
+					if (move == MoveGenerator.INVALID || (move & (MoveGenerator.RESIGN | MoveGenerator.DRAW_OFFER)) != 0) {
+						continue;
+					}
+					long key = PolyglotKey.of(session);
+					int bookMove = toBook(session, move);
+					if (session.play(move).message == ReturnPlay.Message.ILLEGAL_MOVE) {
+						continue;
+					}
+					counts.computeIfAbsent(key, k -> new HashMap<>()).merge(bookMove, 1, Integer::sum);
+					ply++;
+				}
+			}
+		}
+
+		List<long[]> rows = new ArrayList<>(); // key, move, weight
+		for (Map.Entry<Long, Map<Integer, Integer>> position : counts.entrySet()) {
+			for (Map.Entry<Integer, Integer> move : position.getValue().entrySet()) {
+				rows.add(new long[] { position.getKey(), move.getKey(), Math.min(0xFFFF, move.getValue()) });
+			}
+		}
+		// Polyglot order: by unsigned key, then heaviest move first.
+		rows.sort((a, b) -> a[0] != b[0] ? Long.compareUnsigned(a[0], b[0]) : Long.compare(b[2], a[2]));
+
+		try (FileChannel channel = FileChannel.open(out, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			ByteBuffer buffer = ByteBuffer.allocate(ENTRY_SIZE * 4096).order(ByteOrder.BIG_ENDIAN);
+			for (long[] row : rows) {
+				if (buffer.remaining() < ENTRY_SIZE) {
+					buffer.flip();
+					while (buffer.hasRemaining()) {
+						channel.write(buffer);
+					}
+					buffer.clear();
+				}
+				buffer.putLong(row[0]).putShort((short) row[1]).putShort((short) row[2]).putInt(0);
+			}
+			buffer.flip();
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+		}
+		return rows.size();
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2 || !(args[0].equals("build") || args[0].equals("probe"))) {
+			System.err.println("Usage: java chess.OpeningBook build book.bin [-plies N] file...");
+			System.err.println("       java chess.OpeningBook probe book.bin [move...]");
+			return;
+		}
+		Path book = Paths.get(args[1]);
+
+		if (args[0].equals("build")) {
+			int plies = 20;
+			List<Path> files = new ArrayList<>();
+			for (int i = 2; i < args.length; i++) {
+				if (args[i].equals("-plies") && i + 1 < args.length) {
+					plies = Integer.parseInt(args[++i]);
+				} else {
+					files.add(Paths.get(args[i]));
+				}
+			}
+			long start = System.nanoTime();
+			int entries = build(book, files, plies);
+			System.out.printf("%d entries written to %s in %.3f s%n", entries, book, (System.nanoTime() - start) / 1e9);
+			return;
+		}
+
+		GameSession session = new GameSession();
+		for (int i = 2; i < args.length; i++) {
+			if (session.play(args[i]).message == ReturnPlay.Message.ILLEGAL_MOVE) {
+				System.err.println("Illegal move: " + args[i]);
+				return;
+			}
+		}
+		try (OpeningBook opening = open(book)) {
+			int[] moves = new int[MoveGenerator.MAX_MOVES];
+			int[] weights = new int[MoveGenerator.MAX_MOVES];
+			long start = System.nanoTime();
+			int found = opening.lookup(PolyglotKey.of(session), moves, weights);
+			long elapsed = System.nanoTime() - start;
+			System.out.printf("%d entries, %d for this position, lookup %d ns%n", opening.size(), found, elapsed);
+			for (int i = 0; i < found; i++) {
+				System.out.println(MoveGenerator.toText(fromBook(session, moves[i])) + "\t" + weights[i]);
+			}
+		}
+	}
+}
@@ -0,0 +1,149 @@
+package chess;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Lazy SMP: several Search workers run the same iterative deepening search
+ * on their own copies of the position and share one transposition table.
+ * The workers never talk to each other; what one has already searched shows
+ * up as table hits for the rest, and helpers with an odd id search a ply
+ * deeper so they fill the table ahead of the main worker.
+ *
+ * The main worker's result is the answer. Once it finishes the helpers are
+ * stopped and their nodes are added to the totals.
+ *
+ * Usage: java chess.ParallelSearch [-depth N] [-threads N] [-hash MB] [moves...]
+ * prints the time to reach the depth at 1, 2, 4, ... threads and the
+ * speedup over one thread.
+ */
+public class ParallelSearch {
+
+	private final TranspositionTable tt;
+	private final Search[] workers;
+	private final ForkJoinPool pool;
+
+	ParallelSearch(int threads, int hashMegabytes) {
+		tt = new TranspositionTable(hashMegabytes);
+		workers = new Search[threads];
+		for (int i = 0; i < threads; i++) {
+			workers[i] = new Search(tt, i);
+		}
+		pool = new ForkJoinPool(threads);
+	}
+
+	int threads() {
+		return workers.length;
+	}
+
+	TranspositionTable table() {
+		return tt;
+	}
+
+	void setNetwork(Nnue network) {
+		for (Search worker : workers) {
+			worker.setNetwork(network);
+		}
+	}
+
+	/**
+	 * Passes each depth the main worker finishes to listener.
+	 */
+	void setListener(Search.Listener listener) {
+		workers[0].setListener(listener);
+	}
+
+	void stop() {
+		for (Search worker : workers) {
+			worker.stop();
+		}
+	}
+
+	void shutdown() {
+		stop();
+		pool.shutdown();
+	}
+
+	/**
+	 * Searches like Search.search, with every worker on the position at once.
+	 *
+	 * @param info where the main worker prints a line per finished depth, or null
+	 */
+	Search.Result search(GameSession position, int maxDepth, long timeMillis, PrintStream info)
+			throws InterruptedException {
+		for (Search worker : workers) {
+			worker.resume();
+		}
+		List<Future<Search.Result>> helpers = new ArrayList<>(workers.length - 1);
+		for (int i = 1; i < workers.length; i++) {
+			Search helper = workers[i];
+			helpers.add(pool.submit(() -> helper.iterate(position, maxDepth, timeMillis, null)));
+		}
+		Search.Result result;
+		try {
+			result = pool.submit(() -> workers[0].iterate(position, maxDepth, timeMillis, info)).get();
+		} catch (ExecutionException e) {
+			stop();
+			throw new IllegalStateException("Search failed", e.getCause());
+		}
+
+		for (int i = 1; i < workers.length; i++) {
+			workers[i].stop();
+		}
+		for (Future<Search.Result> helper : helpers) {
+			try {
+				Search.Result r = helper.get();
+				result.nodes += r.nodes;
+				result.ttProbes += r.ttProbes;
+				result.ttHits += r.ttHits;
+			} catch (ExecutionException e) {
+				throw new IllegalStateException("Search failed", e.getCause());
+			}
+		}
+		return result;
+	}
+
+	public static void main(String[] args) throws InterruptedException {
+		int depth = 7;
+		int maxThreads = Runtime.getRuntime().availableProcessors();
+		int hash = 64;
+		GameSession session = new GameSession();
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-depth") && i + 1 < args.length) {
+				depth = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-threads") && i + 1 < args.length) {
+				maxThreads = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-hash") && i + 1 < args.length) {
+				hash = Integer.parseInt(args[++i]);
+			} else if (session.play(args[i]).message == ReturnPlay.Message.ILLEGAL_MOVE) {
+				System.err.println("Illegal move: " + args[i]);
+				return;
+			}
+		}
+
+		// One untimed search first so the single-thread baseline is not paying for JIT warmup.
+		new Search(new TranspositionTable(hash)).search(session, depth, 0, null);
+
+		double baseline = 0;
+		for (int threads = 1;; threads = Math.min(threads * 2, maxThreads)) {
+			ParallelSearch search = new ParallelSearch(threads, hash);
+			Search.Result result = search.search(session, depth, 0, null);
+			search.shutdown();
+
+			double seconds = result.elapsedNanos / 1e9;
+			if (threads == 1) {
+				baseline = seconds;
+			}
+			System.out.printf("%2d threads: depth %d in %.3f s, speedup %.2fx, %d nodes/s, tt hit rate %.1f%%, best %s (%s)%n",
+					threads, result.depth, seconds, baseline / seconds, result.nodesPerSecond(),
+					result.ttHitRate() * 100, result.bestMove(), Search.scoreText(result.score));
+			if (threads >= maxThreads) {
+				break;
+			}
+		}
+	}
+}
@@ -0,0 +1,73 @@
+package chess;
+
+/**
+ * Counts the leaf nodes of the legal move tree to a fixed depth. The counts
+ * from the starting position and from "Kiwipete", a middlegame position
+ * full of castling, en passant and promotion cases, are well known, so a
+ * mismatch points straight at a move generation bug, and the timing gives
+ * a throughput baseline.
+ *
+ * Usage: java chess.Perft [depth] [FEN | kiwipete]
+ */
+public class Perft {
+
+	// Published node counts from the starting position, by depth.
+	private static final long[] START_COUNTS = { 1L, 20L, 400L, 8902L, 197281L, 4865609L, 119060324L };
+
+	static final String KIWIPETE = "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1";
+	private static final long[] KIWIPETE_COUNTS = { 1L, 48L, 2039L, 97862L, 4085603L, 193690690L };
+
+	/**
+	 * Counts the positions reachable in exactly depth moves.
+	 */
+	static long perft(GameSession session, int depth) {
+		if (depth == 0) {
+			return 1;
+		}
+		return perft(session, depth, 0, new int[depth][MoveGenerator.MAX_MOVES]);
+	}
+
+	// One move list per ply, allocated once per run.
+	private static long perft(GameSession session, int depth, int ply, int[][] moves) {
+		int count = MoveGenerator.generateLegal(session, moves[ply]);
+		if (depth == 1) {
+			return count;
+		}
+		long nodes = 0;
+		for (int i = 0; i < count; i++) {
+			session.makeMove(moves[ply][i]);
+			nodes += perft(session, depth - 1, ply + 1, moves);
+			session.unmakeMove();
+		}
+		return nodes;
+	}
+
+	public static void main(String[] args) {
+		int maxDepth = 4;
+		if (args.length > 0) {
+			maxDepth = Integer.parseInt(args[0]);
+		}
+		String fen = Fen.START;
+		long[] expected = START_COUNTS;
+		if (args.length > 1) {
+			fen = args[1].equalsIgnoreCase("kiwipete") ? KIWIPETE : args[1];
+			expected = fen.equals(KIWIPETE) ? KIWIPETE_COUNTS : fen.equals(Fen.START) ? START_COUNTS : new long[0];
+		}
+
+		Fen reader = new Fen();
+		for (int depth = 1; depth <= maxDepth; depth++) {
+			GameSession session = new GameSession();
+			reader.load(session, fen);
+			long start = System.nanoTime();
+			long nodes = perft(session, depth);
+			long elapsed = Math.max(1, System.nanoTime() - start);
+
+			String check = "";
+			if (depth < expected.length) {
+				check = nodes == expected[depth] ? "ok" : "MISMATCH, expected " + expected[depth];
+			}
+			System.out.printf("depth %d: %d nodes in %.3f s, %.0f nodes/s %s%n",
+					depth, nodes, elapsed / 1e9, nodes * 1e9 / elapsed, check);
+		}
+	}
+}
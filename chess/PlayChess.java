@@ -1,81 +1,132 @@
 package chess;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.Scanner;
+import java.util.List;
 
+/**
+ * Plays moves typed one per line on stdin, printing each result message and
+ * the board after it. Besides moves such as "e2 e4" it takes "takeback",
+ * "reset" and "quit".
+ *
+ * Given script files it runs them in batch instead, one after the other in
+ * the same JVM, each from the start position: lines come through a
+ * BufferedReader, and everything goes out through one buffered writer that
+ * is only flushed at the end. -output picks what is printed: all (the same
+ * as interactive), messages (one "move: message" line per move that has
+ * one) or final (the last message and the board once per script). Output
+ * for several scripts is headed by "==> file <==".
+ *
+ * Usage: java chess.PlayChess [-output all|messages|final] [script...]
+ */
 public class PlayChess {
 
-	public static void main(String[] args) {
-		// TODO Auto-generated method stub
-		Scanner sc = new Scanner(System.in);
-		Chess.start();
-		
-		String line = sc.nextLine();
-		while (!line.equals("quit")) {
-			if (line.equals("reset")) {
-				Chess.start();
-				System.out.println();
-				line = sc.nextLine();
-				continue;
-			}
-			// move 
-			ReturnPlay res = Chess.play(line);
-			
-			// print result message
-			if (res.message != null) {
-				System.out.println("\n"+res.message);
+	enum Output {
+		ALL, MESSAGES, FINAL
+	}
+
+	public static void main(String[] args) throws IOException {
+		Output output = Output.ALL;
+		List<String> scripts = new ArrayList<>();
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-output") && i + 1 < args.length) {
+				try {
+					output = Output.valueOf(args[++i].toUpperCase());
+				} catch (IllegalArgumentException e) {
+					System.err.println("Usage: java chess.PlayChess [-output all|messages|final] [script...]");
+					return;
+				}
+			} else {
+				scripts.add(args[i]);
 			}
-			System.out.println();
-			
-			// print result board
-			printBoard(res.piecesOnBoard);
-			System.out.println();
-			
-			// next line
-			line = sc.nextLine();
 		}
-		
-		sc.close();
-	}
-	
-	static void printBoard(ArrayList<ReturnPiece> pieces) {
-		String[][] board = makeBlankBoard();
-		if (pieces != null) {
-			printPiecesOnBoard(pieces, board);
+
+		Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), 1 << 16);
+		if (scripts.isEmpty()) {
+			BufferedReader in = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+			run(in, out, output, true);
+			out.flush();
+			return;
 		}
-		for (int r=0; r < 8; r++) {
-			for (int c=0; c < 8; c++) {
-				System.out.print(board[r][c] + " ");
-			}	
-			System.out.println((8-r));
+		for (String script : scripts) {
+			if (scripts.size() > 1) {
+				out.write("==> " + script + " <==\n");
+			}
+			try (BufferedReader in = Files.newBufferedReader(Paths.get(script), StandardCharsets.UTF_8)) {
+				run(in, out, output, false);
+			}
 		}
-		System.out.println(" a  b  c  d  e  f  g  h");
+		out.flush();
 	}
-	
-	static String[][] makeBlankBoard() {
-		String[][] board = new String[8][8];
-		for (int r=0; r < 8; r++) {
-			for (int c=0; c < 8; c++) {
-				if (r % 2 == 0) {
-					board[r][c] = c % 2 == 0 ? "  " : "##";
+
+	/**
+	 * Plays the lines of in from the start position until "quit" or the end
+	 * of in, writing what output asks for to out.
+	 *
+	 * @param flushEachLine whether a reader is waiting on each line's output
+	 */
+	static void run(BufferedReader in, Writer out, Output output, boolean flushEachLine) throws IOException {
+		BoardRenderer renderer = new BoardRenderer();
+		PlayDelta delta = new PlayDelta();
+		Chess.start();
+		renderer.render(Chess.rp.piecesOnBoard);
+
+		String line;
+		while ((line = in.readLine()) != null && !line.equals("quit")) {
+			if (line.equals("reset")) {
+				Chess.start();
+				if (output == Output.ALL) {
+					renderer.render(Chess.rp.piecesOnBoard);
+					out.write('\n');
+				}
+			} else {
+				// move, or take back the last one
+				ReturnPlay res;
+				if (line.equals("takeback")) {
+					res = Chess.takeback();
 				} else {
-					board[r][c] = c % 2 == 0 ? "##" : "  ";
+					res = Chess.play(line);
+				}
+
+				if (output == Output.ALL) {
+					// print result message
+					if (res.message != null) {
+						out.write("\n" + res.message + "\n");
+					}
+					out.write('\n');
+
+					// print result board, redrawing only what the move changed
+					if (Chess.lastDelta(delta)) {
+						renderer.apply(delta);
+					} else {
+						renderer.render(res.piecesOnBoard);
+					}
+					renderer.writeTo(out);
+					out.write('\n');
+				} else if (output == Output.MESSAGES && res.message != null) {
+					out.write(line + ": " + res.message + "\n");
 				}
 			}
+			if (flushEachLine) {
+				out.flush();
+			}
+		}
+
+		if (output == Output.FINAL) {
+			if (Chess.rp.message != null) {
+				out.write(Chess.rp.message + "\n");
+			}
+			renderer.render(Chess.rp.piecesOnBoard);
+			renderer.writeTo(out);
+			out.write('\n');
 		}
-		return board;
-	}
-	
-	static void printPiecesOnBoard(
-			ArrayList<ReturnPiece> pieces, String[][] board) {
-		for (ReturnPiece rp: pieces) {
-			int file = (""+rp.pieceFile).charAt(0) - 'a';
-			String pieceStr = "" + rp.pieceType;
-			String ppstr = "";
-			ppstr += Character.toLowerCase(pieceStr.charAt(0));
-			ppstr += pieceStr.charAt(1) == 'P' ? 'p' : pieceStr.charAt(1);
-			board[8-rp.pieceRank][file] = ppstr;
-		}	
 	}
-	
 }
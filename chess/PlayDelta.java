@@ -0,0 +1,66 @@
+package chess;
+
+/**
+ * What the last successful play changed on the board: the piece that moved,
+ * the piece it captured, the rook that came along when castling and the new
+ * type of a promoted pawn. Squares use the GameSession numbering, a1 = 0 to
+ * h8 = 63, and are -1 when unused.
+ *
+ * One PlayDelta can be filled again and again by GameSession.lastDelta, so
+ * following a game move by move allocates nothing.
+ */
+class PlayDelta {
+
+	ReturnPiece moved;
+	int from;
+	int to;
+	ReturnPiece captured;
+	int capturedSquare; // differs from to for en passant
+	ReturnPiece castledRook;
+	int rookFrom;
+	int rookTo;
+	ReturnPiece.PieceType promotedTo;
+
+	void clear() {
+		moved = null;
+		from = -1;
+		to = -1;
+		captured = null;
+		capturedSquare = -1;
+		castledRook = null;
+		rookFrom = -1;
+		rookTo = -1;
+		promotedTo = null;
+	}
+
+	/**
+	 * Appends the change in a compact text form for clients that keep their
+	 * own board, e.g. "e2 e4", "e5 d6 xd5" or "e1 g1 h1 f1".
+	 */
+	StringBuilder appendTo(StringBuilder sb) {
+		appendSquare(sb, from).append(' ');
+		appendSquare(sb, to);
+		if (captured != null) {
+			sb.append(" x");
+			appendSquare(sb, capturedSquare);
+		}
+		if (castledRook != null) {
+			sb.append(' ');
+			appendSquare(sb, rookFrom).append(' ');
+			appendSquare(sb, rookTo);
+		}
+		if (promotedTo != null) {
+			sb.append(" =").append(promotedTo.name().charAt(1));
+		}
+		return sb;
+	}
+
+	private static StringBuilder appendSquare(StringBuilder sb, int square) {
+		return sb.append((char) ('a' + (square & 7))).append((char) ('1' + (square >> 3)));
+	}
+
+	@Override
+	public String toString() {
+		return appendTo(new StringBuilder(16)).toString();
+	}
+}
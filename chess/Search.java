@@ -0,0 +1,458 @@
+package chess;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Paths;
+
+/**
+ * Finds a best move with iterative deepening negamax alpha-beta search,
+ * a quiescence search over captures at the leaves, and a transposition
+ * table for move ordering and cut-offs.
+ *
+ * A Search works on its own copy of the position, so the caller's game is
+ * never touched. One Search runs one search at a time; stop may be called
+ * from another thread.
+ *
+ * Usage: java chess.Search [-depth N] [-time MILLIS] [-hash MB] [-bitbase FILE] [-nnue FILE] ["e2 e4" ...]
+ */
+public class Search {
+
+	static final int INFINITY = 32000;
+	static final int MATE = 31000;
+	// Scores beyond this are mates, counted in plies from the root.
+	static final int MATE_BOUND = MATE - 1000;
+	static final int MAX_PLY = 128;
+	// Score for a bitbase win: above any material count, below any mate.
+	static final int KNOWN_WIN = 20000;
+
+	/**
+	 * What one search found, with the statistics gathered along the way.
+	 */
+	static class Result {
+		int move;
+		int score;
+		int depth;
+		long nodes;
+		long elapsedNanos;
+		long ttProbes;
+		long ttHits;
+
+		String bestMove() {
+			return move == 0 ? null : MoveGenerator.toText(move);
+		}
+
+		long nodesPerSecond() {
+			return nodes * 1_000_000_000L / Math.max(1, elapsedNanos);
+		}
+
+		double ttHitRate() {
+			return ttProbes == 0 ? 0 : (double) ttHits / ttProbes;
+		}
+	}
+
+	/**
+	 * Hears about each depth as the search finishes it.
+	 */
+	interface Listener {
+		void depthDone(Result result);
+	}
+
+	private final TranspositionTable tt;
+	// Lazy SMP helpers with an odd id search one ply deeper than the main
+	// worker, so workers sharing a table spread out over the tree.
+	private final int helperId;
+	private final int[][] moves = new int[MAX_PLY][MoveGenerator.MAX_MOVES];
+	private final int[][] orderScores = new int[MAX_PLY][MoveGenerator.MAX_MOVES];
+	private GameSession session;
+	private Bitbase bitbase;
+	private Nnue network;
+	private Listener listener;
+	private int rootPieces;
+	private int rootMove; // Best move found at ply 0 in the depth being searched.
+	private volatile boolean stopped;
+	private long deadline;
+	private long nodeLimit = Long.MAX_VALUE;
+	private long nodes;
+	private long ttProbes;
+	private long ttHits;
+
+	Search(TranspositionTable tt) {
+		this(tt, 0);
+	}
+
+	Search(TranspositionTable tt, int helperId) {
+		this.tt = tt;
+		this.helperId = helperId;
+	}
+
+	/**
+	 * Asks a running search to return as soon as it can, with the best move
+	 * from the last depth it finished.
+	 */
+	void stop() {
+		stopped = true;
+	}
+
+	void resume() {
+		stopped = false;
+	}
+
+	/**
+	 * Lets the search score a line that trades down into a covered ending
+	 * from the bitbase instead of searching it out.
+	 */
+	void setBitbase(Bitbase bitbase) {
+		this.bitbase = bitbase;
+	}
+
+	/**
+	 * Evaluates with network instead of Evaluator's tables, or with the
+	 * tables again when network is null.
+	 */
+	void setNetwork(Nnue network) {
+		this.network = network;
+	}
+
+	/**
+	 * Stops each search after about nodes nodes (0 for no limit), finishing
+	 * with the last depth it completed. Unlike a time limit this plays the
+	 * same moves however loaded the machine is.
+	 */
+	void setNodeLimit(long nodes) {
+		nodeLimit = nodes > 0 ? nodes : Long.MAX_VALUE;
+	}
+
+	void setListener(Listener listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * Searches the position one depth at a time until maxDepth is done or
+	 * timeMillis has passed (0 for no time limit).
+	 *
+	 * @param info where to print a line per finished depth, or null
+	 */
+	Result search(GameSession position, int maxDepth, long timeMillis, PrintStream info) {
+		stopped = false;
+		return iterate(position, maxDepth, timeMillis, info);
+	}
+
+	/**
+	 * Runs the search without clearing an earlier stop request, so a worker
+	 * stopped before its thread got going returns straight away.
+	 */
+	Result iterate(GameSession position, int maxDepth, long timeMillis, PrintStream info) {
+		session = new GameSession(position);
+		session.setNetwork(network);
+		rootPieces = session.pieceCount();
+		nodes = 0;
+		ttProbes = 0;
+		ttHits = 0;
+		long start = System.nanoTime();
+		deadline = timeMillis > 0 ? start + timeMillis * 1_000_000L : Long.MAX_VALUE;
+
+		Result result = new Result();
+		for (int depth = 1; depth <= Math.min(maxDepth, MAX_PLY - 1); depth++) {
+			rootMove = 0;
+			int score = negamax(depth + (helperId & 1), -INFINITY, INFINITY, 0);
+			if (stopped && depth > 1) {
+				break; // An unfinished depth is not trusted.
+			}
+			// Our own root move, not the table's: other workers store the root too.
+			if (rootMove != 0) {
+				result.move = rootMove;
+			}
+			result.score = score;
+			result.depth = depth;
+			result.nodes = nodes;
+			result.elapsedNanos = System.nanoTime() - start;
+			result.ttProbes = ttProbes;
+			result.ttHits = ttHits;
+			if (info != null) {
+				info.printf("depth %d score %s nodes %d nps %d tt %.1f%% best %s%n", depth, scoreText(score),
+						nodes, result.nodesPerSecond(), result.ttHitRate() * 100, result.bestMove());
+			}
+			if (listener != null) {
+				listener.depthDone(result);
+			}
+			if (stopped || Math.abs(score) > MATE_BOUND) {
+				break;
+			}
+		}
+		result.nodes = nodes;
+		result.elapsedNanos = System.nanoTime() - start;
+		result.ttProbes = ttProbes;
+		result.ttHits = ttHits;
+		return result;
+	}
+
+	private int negamax(int depth, int alpha, int beta, int ply) {
+		if (ply > 0 && session.isDraw()) {
+			return 0;
+		}
+		// Only on the way into an ending: once the root is in it, a plain
+		// win score would give no hint of how to make progress.
+		if (bitbase != null && ply > 0 && session.pieceCount() <= 3 && rootPieces > 3) {
+			int value = bitbase.probe(session);
+			if (value == Bitbase.DRAW) {
+				return 0;
+			} else if (value == Bitbase.WIN) {
+				return KNOWN_WIN - ply;
+			} else if (value == Bitbase.LOSS) {
+				return -KNOWN_WIN + ply;
+			}
+		}
+		GameSession.Player mover = session.getTurn();
+		boolean inCheck = session.isInCheck(mover);
+		if (inCheck) {
+			depth++; // Look one move further when in check.
+		}
+		if (depth <= 0 || ply >= MAX_PLY - 1) {
+			return quiescence(alpha, beta, ply);
+		}
+		countNode();
+		if (stopped) {
+			return 0;
+		}
+
+		long key = session.getZobristKey();
+		ttProbes++;
+		long entry = tt.probe(key);
+		int ttMove = 0;
+		if (entry != 0) {
+			ttHits++;
+			ttMove = TranspositionTable.move(entry);
+			if (ply > 0 && TranspositionTable.depth(entry) >= depth) {
+				int score = fromTable(TranspositionTable.score(entry), ply);
+				int bound = TranspositionTable.bound(entry);
+				if (bound == TranspositionTable.EXACT
+						|| (bound == TranspositionTable.LOWER_BOUND && score >= beta)
+						|| (bound == TranspositionTable.UPPER_BOUND && score <= alpha)) {
+					return score;
+				}
+			}
+		}
+
+		int[] list = moves[ply];
+		int count = MoveGenerator.generatePseudoLegal(session, list);
+		scoreMoves(list, orderScores[ply], count, ttMove);
+
+		int originalAlpha = alpha;
+		int best = -INFINITY;
+		int bestMove = 0;
+		int legal = 0;
+		for (int i = 0; i < count; i++) {
+			int move = pickNext(list, orderScores[ply], i, count);
+			session.makeMove(move);
+			if (session.isInCheck(mover)) {
+				session.unmakeMove();
+				continue;
+			}
+			legal++;
+			int score = -negamax(depth - 1, -beta, -alpha, ply + 1);
+			session.unmakeMove();
+			if (stopped) {
+				return 0;
+			}
+			if (score > best) {
+				best = score;
+				bestMove = move;
+				if (ply == 0) {
+					rootMove = move;
+				}
+				if (score > alpha) {
+					alpha = score;
+					if (alpha >= beta) {
+						break;
+					}
+				}
+			}
+		}
+
+		if (legal == 0) { // Checkmate or stalemate.
+			return inCheck ? -MATE + ply : 0;
+		}
+
+		int bound;
+		if (best >= beta) {
+			bound = TranspositionTable.LOWER_BOUND;
+		} else if (best > originalAlpha) {
+			bound = TranspositionTable.EXACT;
+		} else {
+			bound = TranspositionTable.UPPER_BOUND;
+		}
+		tt.store(key, bestMove, toTable(best, ply), depth, bound);
+		return best;
+	}
+
+	private int quiescence(int alpha, int beta, int ply) {
+		countNode();
+		if (stopped) {
+			return 0;
+		}
+		int standPat = Evaluator.evaluate(session);
+		if (standPat >= beta || ply >= MAX_PLY - 1) {
+			return standPat;
+		}
+		if (standPat > alpha) {
+			alpha = standPat;
+		}
+
+		GameSession.Player mover = session.getTurn();
+		int[] list = moves[ply];
+		int count = MoveGenerator.generatePseudoLegal(session, list);
+		// Only captures and promotions are searched here.
+		int kept = 0;
+		for (int i = 0; i < count; i++) {
+			if (isCapture(list[i]) || MoveGenerator.promotion(list[i]) != 0) {
+				list[kept++] = list[i];
+			}
+		}
+		scoreMoves(list, orderScores[ply], kept, 0);
+
+		for (int i = 0; i < kept; i++) {
+			int move = pickNext(list, orderScores[ply], i, kept);
+			session.makeMove(move);
+			if (session.isInCheck(mover)) {
+				session.unmakeMove();
+				continue;
+			}
+			int score = -quiescence(-beta, -alpha, ply + 1);
+			session.unmakeMove();
+			if (stopped) {
+				return 0;
+			}
+			if (score >= beta) {
+				return score;
+			}
+			if (score > alpha) {
+				alpha = score;
+			}
+		}
+		return alpha;
+	}
+
+	private void countNode() {
+		// Checking the clock on every node would cost more than the node.
+		if (++nodes >= nodeLimit || ((nodes & 127) == 0 && System.nanoTime() > deadline)) {
+			stopped = true;
+		}
+	}
+
+	private boolean isCapture(int move) {
+		int to = MoveGenerator.to(move);
+		if (session.pieceAt(to) != null) {
+			return true;
+		}
+		// A pawn changing file onto an empty square is taking en passant.
+		int from = MoveGenerator.from(move);
+		return (from & 7) != (to & 7) && session.pieceAt(from).pieceType.name().charAt(1) == 'P';
+	}
+
+	// Hash move first, then captures by most valuable victim and least valuable attacker.
+	private void scoreMoves(int[] list, int[] scores, int count, int ttMove) {
+		for (int i = 0; i < count; i++) {
+			int move = list[i];
+			int score = 0;
+			if (move == ttMove) {
+				score = 1_000_000;
+			} else {
+				ReturnPiece victim = session.pieceAt(MoveGenerator.to(move));
+				if (victim != null) {
+					ReturnPiece attacker = session.pieceAt(MoveGenerator.from(move));
+					score = 10_000 + Evaluator.PIECE_VALUES[victim.pieceType.ordinal()] * 10
+							- Evaluator.PIECE_VALUES[attacker.pieceType.ordinal()] / 10;
+				}
+				if (MoveGenerator.promotion(move) == 4) {
+					score += 9_000;
+				}
+			}
+			scores[i] = score;
+		}
+	}
+
+	// Selection sort step: swaps the best remaining move into slot i.
+	private static int pickNext(int[] list, int[] scores, int i, int count) {
+		int best = i;
+		for (int j = i + 1; j < count; j++) {
+			if (scores[j] > scores[best]) {
+				best = j;
+			}
+		}
+		int move = list[best];
+		list[best] = list[i];
+		list[i] = move;
+		int score = scores[best];
+		scores[best] = scores[i];
+		scores[i] = score;
+		return move;
+	}
+
+	// Mate scores are stored relative to the node, and read back relative to the root.
+	private static int toTable(int score, int ply) {
+		if (score > MATE_BOUND) {
+			return score + ply;
+		}
+		if (score < -MATE_BOUND) {
+			return score - ply;
+		}
+		return score;
+	}
+
+	private static int fromTable(int score, int ply) {
+		if (score > MATE_BOUND) {
+			return score - ply;
+		}
+		if (score < -MATE_BOUND) {
+			return score + ply;
+		}
+		return score;
+	}
+
+	static String scoreText(int score) {
+		if (score > MATE_BOUND) {
+			return "mate " + (MATE - score + 1) / 2;
+		}
+		if (score < -MATE_BOUND) {
+			return "mate -" + (MATE + score + 1) / 2;
+		}
+		return "cp " + score;
+	}
+
+	public static void main(String[] args) throws IOException {
+		int depth = 6;
+		long time = 0;
+		int hash = 64;
+		String bitbaseFile = null;
+		String networkFile = null;
+		GameSession session = new GameSession();
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-depth") && i + 1 < args.length) {
+				depth = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-time") && i + 1 < args.length) {
+				time = Long.parseLong(args[++i]);
+			} else if (args[i].equals("-hash") && i + 1 < args.length) {
+				hash = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-bitbase") && i + 1 < args.length) {
+				bitbaseFile = args[++i];
+			} else if (args[i].equals("-nnue") && i + 1 < args.length) {
+				networkFile = args[++i];
+			} else if (session.play(args[i]).message == ReturnPlay.Message.ILLEGAL_MOVE) {
+				System.err.println("Illegal move: " + args[i]);
+				return;
+			}
+		}
+
+		Search search = new Search(new TranspositionTable(hash));
+		if (bitbaseFile != null) {
+			search.setBitbase(Bitbase.open(Paths.get(bitbaseFile)));
+		}
+		if (networkFile != null) {
+			search.setNetwork(Nnue.load(Paths.get(networkFile)));
+		}
+		Result result = search.search(session, depth, time, System.out);
+		System.out.printf("%d nodes in %.3f s, %d nodes/s, tt hit rate %.1f%% (%d slots)%n", result.nodes,
+				result.elapsedNanos / 1e9, result.nodesPerSecond(), result.ttHitRate() * 100, search.tt.size());
+		System.out.println("bestmove " + result.bestMove());
+	}
+}
@@ -0,0 +1,293 @@
+package chess;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Plays engine A against engine B many times over and reports how A did:
+ * wins, draws and losses, the Elo difference with a 95% error bar, games
+ * per second, and how the games ended as ReturnPlay messages.
+ *
+ * Games are shared out over a pool of threads. Each thread has its own
+ * pair of Searches and tables, cleared before every game, and each game
+ * its own GameSession, whose play() judges every move exactly as
+ * Chess.play would. Openings are a few random legal plies, or book moves
+ * when a book is given; each opening is played twice with the colours
+ * swapped, so neither engine gains from a lopsided start.
+ *
+ * Usage: java chess.SelfPlay [-games N] [-threads N] [-nodes N | -time MS]
+ *        [-plies N] [-book FILE] [-seed N] [-hash MB] [-max-plies N]
+ *        [-a-nnue FILE] [-b-nnue FILE]
+ */
+public class SelfPlay {
+
+	private static final ReturnPlay.Message[] MESSAGES = ReturnPlay.Message.values();
+
+	/**
+	 * What one engine plays with: a node or time budget per move and an
+	 * optional network.
+	 */
+	private static final class Engine {
+		final long nodes;
+		final long timeMillis;
+		final Nnue network;
+
+		Engine(long nodes, long timeMillis, Nnue network) {
+			this.nodes = nodes;
+			this.timeMillis = timeMillis;
+			this.network = network;
+		}
+	}
+
+	/**
+	 * Results of some games, from engine A's point of view.
+	 */
+	private static final class Tally {
+		long wins;
+		long draws;
+		long losses;
+		long moveLimit; // Games stopped at the ply limit, counted as draws.
+		long moves;
+		final Map<ReturnPlay.Message, Long> endings = new EnumMap<>(ReturnPlay.Message.class);
+
+		void add(Tally other) {
+			wins += other.wins;
+			draws += other.draws;
+			losses += other.losses;
+			moveLimit += other.moveLimit;
+			moves += other.moves;
+			other.endings.forEach((message, n) -> endings.merge(message, n, Long::sum));
+		}
+
+		long games() {
+			return wins + draws + losses;
+		}
+	}
+
+	private final Engine a;
+	private final Engine b;
+	private final int openingPlies;
+	private final int maxPlies;
+	private final OpeningBook book;
+	private final long seed;
+	private final int hashMegabytes;
+
+	private SelfPlay(Engine a, Engine b, int openingPlies, int maxPlies, OpeningBook book, long seed,
+			int hashMegabytes) {
+		this.a = a;
+		this.b = b;
+		this.openingPlies = openingPlies;
+		this.maxPlies = maxPlies;
+		this.book = book;
+		this.seed = seed;
+		this.hashMegabytes = hashMegabytes;
+	}
+
+	// Plays games off the shared counter until there are none left.
+	private Tally work(AtomicInteger next, int games) {
+		TranspositionTable[] tables = { new TranspositionTable(hashMegabytes), new TranspositionTable(hashMegabytes) };
+		Search[] searches = { new Search(tables[0]), new Search(tables[1]) };
+		Engine[] engines = { a, b };
+		for (int i = 0; i < 2; i++) {
+			searches[i].setNodeLimit(engines[i].nodes);
+			searches[i].setNetwork(engines[i].network);
+		}
+		int[] moves = new int[MoveGenerator.MAX_MOVES];
+		Tally tally = new Tally();
+		for (int game; (game = next.getAndIncrement()) < games;) {
+			tables[0].clear();
+			tables[1].clear();
+			play(game, searches, engines, moves, tally);
+		}
+		return tally;
+	}
+
+	private void play(int game, Search[] searches, Engine[] engines, int[] moves, Tally tally) {
+		GameSession session = new GameSession();
+		// Both games of a pair get the same opening; A is white in the first.
+		Random random = new Random(seed + game / 2);
+		int aColor = game % 2 == 0 ? AttackMap.WHITE : AttackMap.BLACK;
+
+		int plies = 0;
+		ReturnPlay.Message ending = null;
+		for (; plies < openingPlies && ending == null; plies++) {
+			String move = book == null ? null : book.pick(session, random);
+			if (move == null) {
+				int count = MoveGenerator.generateLegal(session, moves);
+				move = MoveGenerator.toText(moves[random.nextInt(count)]);
+			}
+			ending = end(session.play(move).message);
+		}
+		for (; plies < maxPlies && ending == null; plies++) {
+			int us = session.getTurn() == GameSession.Player.white ? AttackMap.WHITE : AttackMap.BLACK;
+			int engine = us == aColor ? 0 : 1;
+			int move = searches[engine].search(session, Search.MAX_PLY - 1, engines[engine].timeMillis, null).move;
+			if (move == 0) { // Stopped before depth 1 picked anything.
+				MoveGenerator.generateLegal(session, moves);
+				move = moves[0];
+			}
+			ending = end(session.play(MoveGenerator.toText(move)).message);
+			tally.moves++;
+		}
+
+		if (ending == null) {
+			tally.moveLimit++;
+			tally.draws++;
+			return;
+		}
+		tally.endings.merge(ending, 1L, Long::sum);
+		switch (ending) {
+			case CHECKMATE_WHITE_WINS:
+			case RESIGN_WHITE_WINS:
+				if (aColor == AttackMap.WHITE) {
+					tally.wins++;
+				} else {
+					tally.losses++;
+				}
+				break;
+			case CHECKMATE_BLACK_WINS:
+			case RESIGN_BLACK_WINS:
+				if (aColor == AttackMap.BLACK) {
+					tally.wins++;
+				} else {
+					tally.losses++;
+				}
+				break;
+			case ILLEGAL_MOVE: // play() refused a generated move: not a result.
+				break;
+			default:
+				tally.draws++;
+				break;
+		}
+	}
+
+	// Returns message if it ends the game, else null.
+	private static ReturnPlay.Message end(ReturnPlay.Message message) {
+		return message == null || message == ReturnPlay.Message.CHECK ? null : message;
+	}
+
+	/**
+	 * Returns the Elo difference that makes score the expected score.
+	 */
+	static double elo(double score) {
+		return -400 * Math.log10(1 / score - 1);
+	}
+
+	private static void report(Tally tally, double seconds) {
+		long games = tally.games();
+		System.out.printf("%d games in %.3f s: %.1f games/s, %.0f moves/s%n", games, seconds, games / seconds,
+				tally.moves / seconds);
+		if (games == 0) {
+			return;
+		}
+		double score = (tally.wins + tally.draws / 2.0) / games;
+		System.out.printf("A: %d wins, %d draws, %d losses, score %.1f%%%n", tally.wins, tally.draws, tally.losses,
+				score * 100);
+		// The standard error of the mean game score, turned into Elo either side.
+		double variance = (tally.wins * Math.pow(1 - score, 2) + tally.draws * Math.pow(0.5 - score, 2)
+				+ tally.losses * Math.pow(score, 2)) / games;
+		double margin = 1.96 * Math.sqrt(variance / games);
+		double low = Math.max(score - margin, 1e-9);
+		double high = Math.min(score + margin, 1 - 1e-9);
+		if (score <= 0 || score >= 1) {
+			System.out.println(score <= 0 ? "Elo -inf (every game lost)" : "Elo +inf (every game won)");
+		} else {
+			System.out.printf("Elo %+.1f +/- %.1f (95%%)%n", elo(score) + 0.0, (elo(high) - elo(low)) / 2);
+		}
+		StringBuilder sb = new StringBuilder("endings:");
+		for (ReturnPlay.Message message : MESSAGES) {
+			Long n = tally.endings.get(message);
+			if (n != null) {
+				sb.append(' ').append(message).append(' ').append(n);
+			}
+		}
+		if (tally.moveLimit > 0) {
+			sb.append(" move limit ").append(tally.moveLimit);
+		}
+		System.out.println(sb);
+	}
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		int games = 100;
+		int threads = Runtime.getRuntime().availableProcessors();
+		long nodes = 0;
+		long time = 0;
+		int plies = 6;
+		int maxPlies = 400;
+		String bookFile = null;
+		long seed = 1;
+		int hash = 8;
+		String[] networkFiles = new String[2];
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-games") && i + 1 < args.length) {
+				games = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-threads") && i + 1 < args.length) {
+				threads = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-nodes") && i + 1 < args.length) {
+				nodes = Long.parseLong(args[++i]);
+			} else if (args[i].equals("-time") && i + 1 < args.length) {
+				time = Long.parseLong(args[++i]);
+			} else if (args[i].equals("-plies") && i + 1 < args.length) {
+				plies = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-max-plies") && i + 1 < args.length) {
+				maxPlies = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-book") && i + 1 < args.length) {
+				bookFile = args[++i];
+			} else if (args[i].equals("-seed") && i + 1 < args.length) {
+				seed = Long.parseLong(args[++i]);
+			} else if (args[i].equals("-hash") && i + 1 < args.length) {
+				hash = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-a-nnue") && i + 1 < args.length) {
+				networkFiles[0] = args[++i];
+			} else if (args[i].equals("-b-nnue") && i + 1 < args.length) {
+				networkFiles[1] = args[++i];
+			}
+		}
+		if (nodes == 0 && time == 0) {
+			nodes = 20_000;
+		}
+
+		Engine[] engines = new Engine[2];
+		for (int i = 0; i < 2; i++) {
+			Nnue network = networkFiles[i] == null ? null : Nnue.load(Paths.get(networkFiles[i]));
+			engines[i] = new Engine(nodes, time, network);
+		}
+		OpeningBook book = bookFile == null ? null : OpeningBook.open(Paths.get(bookFile));
+		SelfPlay runner = new SelfPlay(engines[0], engines[1], plies, maxPlies, book, seed, hash);
+		System.out.printf("%d games on %d threads, %s per move%n", games, threads,
+				nodes > 0 ? nodes + " nodes" : time + " ms");
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		AtomicInteger next = new AtomicInteger();
+		int total = games;
+		long start = System.nanoTime();
+		List<Future<Tally>> workers = new ArrayList<>(threads);
+		for (int t = 0; t < threads; t++) {
+			workers.add(executor.submit(() -> runner.work(next, total)));
+		}
+		Tally tally = new Tally();
+		try {
+			for (Future<Tally> worker : workers) {
+				tally.add(worker.get());
+			}
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Game failed", e.getCause());
+		} finally {
+			executor.shutdown();
+			if (book != null) {
+				book.close();
+			}
+		}
+		report(tally, (System.nanoTime() - start) / 1e9);
+	}
+}
@@ -0,0 +1,88 @@
+package chess;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-size hash table of search results, keyed by Zobrist key.
+ *
+ * Each slot is two longs: the packed entry and the key XORed with that
+ * entry. A reader only accepts a slot when the two XOR back to its key, so
+ * an entry torn by two threads writing at once is simply a miss. That lets
+ * several searches share one table without locks.
+ */
+final class TranspositionTable {
+
+	static final int EXACT = 0;
+	static final int LOWER_BOUND = 1; // score is at least this (fail high)
+	static final int UPPER_BOUND = 2; // score is at most this (fail low)
+
+	// Entry layout: move in bits 0-15, score in 16-31, depth in 32-39,
+	// bound in 40-41 and bit 63 set so a stored entry is never zero.
+	private static final long VALID = 1L << 63;
+
+	private final long[] entries;
+	private final long[] checks;
+	private final int mask;
+
+	/**
+	 * Creates a table using about the given number of megabytes, rounded
+	 * down to a power of two slots.
+	 */
+	TranspositionTable(int megabytes) {
+		long slots = Math.max(1024, (long) megabytes * 1024 * 1024 / 16);
+		int size = Integer.highestOneBit((int) Math.min(slots, 1 << 30));
+		entries = new long[size];
+		checks = new long[size];
+		mask = size - 1;
+	}
+
+	/**
+	 * Returns the entry stored for key, or 0 if there is none.
+	 */
+	long probe(long key) {
+		int index = (int) key & mask;
+		long entry = entries[index];
+		if (entry != 0 && (checks[index] ^ entry) == key) {
+			return entry;
+		}
+		return 0;
+	}
+
+	void store(long key, int move, int score, int depth, int bound) {
+		int index = (int) key & mask;
+		long old = entries[index];
+		// Keep a deeper result for the same position; anything else is replaced.
+		if (old != 0 && (checks[index] ^ old) == key && depth(old) > depth) {
+			return;
+		}
+		long entry = VALID | (move & 0xFFFFL) | ((score & 0xFFFFL) << 16)
+				| ((long) (depth & 0xFF) << 32) | ((long) bound << 40);
+		entries[index] = entry;
+		checks[index] = key ^ entry;
+	}
+
+	void clear() {
+		Arrays.fill(entries, 0);
+		Arrays.fill(checks, 0);
+	}
+
+	int size() {
+		return entries.length;
+	}
+
+	static int move(long entry) {
+		return (int) (entry & 0xFFFF);
+	}
+
+	static int score(long entry) {
+		return (short) (entry >>> 16);
+	}
+
+	static int depth(long entry) {
+		return (int) ((entry >>> 32) & 0xFF);
+	}
+
+	static int bound(long entry) {
+		return (int) ((entry >>> 40) & 3);
+	}
+}
@@ -0,0 +1,517 @@
+package chess;
+
+import java.io.BufferedReader;
+import java.io.BufferedOutputStream;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A Universal Chess Interface front end, so GUIs and match runners can
+ * drive the engine over stdin and stdout.
+ *
+ * The engine keeps one game. "position" compares its move list with the
+ * moves already played and only makes (or takes back) the difference, so
+ * a GUI sending the whole game before every move costs one makeMove, not
+ * a replay from the start.
+ *
+ * "go" searches a copy of the game with ParallelSearch on a background
+ * thread, leaving this one free to read "stop", which cuts the search off
+ * at once with the best move of the last finished depth. "go ponder" and
+ * "go infinite" hold back bestmove until "ponderhit" or "stop"; after a
+ * ponderhit the search gets the time the go command gave it.
+ *
+ * Usage: java chess.Uci
+ */
+public class Uci {
+
+	private static final String START = "startpos";
+	private static final int DEFAULT_HASH = 64;
+	private static final int MAX_DEPTH = Search.MAX_PLY - 1;
+	// Moves assumed left in the game when the GUI does not say.
+	private static final int MOVES_TO_GO = 30;
+
+	private final PrintStream out;
+	private final ExecutorService searcher = Executors.newSingleThreadExecutor(Uci::daemon);
+	private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(Uci::daemon);
+	private ParallelSearch search;
+	private int hashMegabytes = DEFAULT_HASH;
+	private int threads = 1;
+	private Nnue network;
+
+	// The game as set up by the last position command.
+	private final GameSession game = new GameSession();
+	private final Fen fen = new Fen();
+	private String base = START; // "startpos" or the FEN the game started from.
+	private final List<String> played = new ArrayList<>();
+	private final int[] moves = new int[MoveGenerator.MAX_MOVES];
+
+	// The search in progress, guarded by this.
+	private Future<?> running;
+	private int generation; // Counts go commands, so a late timer stops nothing newer.
+	private boolean holding; // Pondering or infinite: bestmove waits for stop or ponderhit.
+	private boolean stopping;
+	private Search.Result held;
+	private long ponderTime; // What a ponder search gets once the move is played.
+	private GameSession searched;
+
+	Uci(PrintStream out) {
+		this.out = out;
+		search = newSearch();
+	}
+
+	private static Thread daemon(Runnable task) {
+		Thread thread = new Thread(task, "uci");
+		thread.setDaemon(true);
+		return thread;
+	}
+
+	/**
+	 * Handles one command line. Returns false on quit.
+	 */
+	boolean command(String line) throws InterruptedException {
+		String[] tokens = line.trim().split("\\s+");
+		switch (tokens[0]) {
+			case "uci":
+				send("id name chess");
+				send("id author the chess authors");
+				send("option name Hash type spin default " + DEFAULT_HASH + " min 1 max 4096");
+				send("option name Threads type spin default 1 min 1 max 256");
+				send("option name Ponder type check default false");
+				send("option name EvalFile type string default <empty>");
+				send("uciok");
+				break;
+			case "isready":
+				send("readyok");
+				break;
+			case "setoption":
+				stopAndWait();
+				setOption(tokens);
+				break;
+			case "ucinewgame":
+				stopAndWait();
+				search.table().clear();
+				setUp(START);
+				break;
+			case "position":
+				stopAndWait();
+				position(tokens);
+				break;
+			case "go":
+				stopAndWait();
+				go(tokens);
+				break;
+			case "stop":
+				stop();
+				break;
+			case "ponderhit":
+				ponderhit();
+				break;
+			case "quit":
+				stopAndWait();
+				search.shutdown();
+				return false;
+			default: // Unknown commands, and debug and register, are ignored.
+				break;
+		}
+		return true;
+	}
+
+	private ParallelSearch newSearch() {
+		ParallelSearch s = new ParallelSearch(threads, hashMegabytes);
+		s.setNetwork(network);
+		s.setListener(this::depthDone);
+		return s;
+	}
+
+	// setoption name <id> [value <x>]; names may contain spaces.
+	private void setOption(String[] tokens) {
+		StringBuilder name = new StringBuilder();
+		StringBuilder value = new StringBuilder();
+		StringBuilder part = null;
+		for (int i = 1; i < tokens.length; i++) {
+			if (tokens[i].equals("name")) {
+				part = name;
+			} else if (tokens[i].equals("value")) {
+				part = value;
+			} else if (part != null) {
+				if (part.length() > 0) {
+					part.append(' ');
+				}
+				part.append(tokens[i]);
+			}
+		}
+		try {
+			switch (name.toString().toLowerCase()) {
+				case "hash":
+					hashMegabytes = Math.max(1, Integer.parseInt(value.toString()));
+					search.shutdown();
+					search = newSearch();
+					break;
+				case "threads":
+					threads = Math.max(1, Integer.parseInt(value.toString()));
+					search.shutdown();
+					search = newSearch();
+					break;
+				case "evalfile":
+					String file = value.toString();
+					network = file.isEmpty() || file.equals("<empty>") ? null : Nnue.load(Paths.get(file));
+					search.setNetwork(network);
+					break;
+				default: // Ponder needs nothing: the GUI decides when to send go ponder.
+					break;
+			}
+		} catch (NumberFormatException | IOException e) {
+			send("info string " + name + ": " + e.getMessage());
+		}
+	}
+
+	// position (startpos | fen <fen>) [moves <move>...]
+	private void position(String[] tokens) {
+		int i = 1;
+		String start;
+		if (i < tokens.length && tokens[i].equals(START)) {
+			start = START;
+			i++;
+		} else if (i < tokens.length && tokens[i].equals("fen")) {
+			StringBuilder sb = new StringBuilder();
+			for (i++; i < tokens.length && !tokens[i].equals("moves"); i++) {
+				sb.append(sb.length() > 0 ? " " : "").append(tokens[i]);
+			}
+			start = sb.toString();
+		} else {
+			send("info string position needs startpos or fen");
+			return;
+		}
+		if (i < tokens.length && tokens[i].equals("moves")) {
+			i++;
+		}
+
+		// Take back to the last move both lists share, or start over.
+		int first = i;
+		if (start.equals(base)) {
+			int common = 0;
+			while (common < played.size() && first + common < tokens.length
+					&& tokens[first + common].equals(played.get(common))) {
+				common++;
+			}
+			while (played.size() > common) {
+				game.unmakeMove();
+				played.remove(played.size() - 1);
+			}
+		} else {
+			try {
+				setUp(start);
+			} catch (IllegalArgumentException e) {
+				send("info string " + e.getMessage());
+				return;
+			}
+		}
+		for (i = first + played.size(); i < tokens.length; i++) {
+			int move = legalMove(tokens[i]);
+			if (move == MoveGenerator.INVALID) {
+				send("info string illegal move " + tokens[i]);
+				return;
+			}
+			game.makeMove(move);
+			played.add(tokens[i]);
+		}
+	}
+
+	private void setUp(String start) {
+		if (start.equals(START)) {
+			game.start();
+		} else {
+			fen.load(game, start);
+		}
+		base = start;
+		played.clear();
+	}
+
+	// Finds the legal move written in UCI's long algebraic form, e.g. e2e4 or e7e8q.
+	private int legalMove(String text) {
+		if (text.length() != 4 && text.length() != 5) {
+			return MoveGenerator.INVALID;
+		}
+		int from = MoveGenerator.parseSquare(text, 0, 2);
+		int to = MoveGenerator.parseSquare(text, 2, 4);
+		int promotion = text.length() == 5 ? "nbrq".indexOf(text.charAt(4)) + 1 : 0;
+		if (from < 0 || to < 0 || (text.length() == 5 && promotion == 0)) {
+			return MoveGenerator.INVALID;
+		}
+		int wanted = MoveGenerator.encode(from, to, promotion);
+		int count = MoveGenerator.generateLegal(game, moves);
+		for (int i = 0; i < count; i++) {
+			if (moves[i] == wanted) {
+				return wanted;
+			}
+		}
+		return MoveGenerator.INVALID;
+	}
+
+	private void go(String[] tokens) {
+		long[] clock = { -1, -1 };
+		long[] increment = new long[2];
+		int movesToGo = 0;
+		long moveTime = -1;
+		int depth = MAX_DEPTH;
+		boolean infinite = false;
+		boolean ponder = false;
+		try {
+			for (int i = 1; i < tokens.length; i++) {
+				boolean hasValue = i + 1 < tokens.length;
+				switch (tokens[i]) {
+					case "wtime":
+						clock[AttackMap.WHITE] = hasValue ? Long.parseLong(tokens[++i]) : -1;
+						break;
+					case "btime":
+						clock[AttackMap.BLACK] = hasValue ? Long.parseLong(tokens[++i]) : -1;
+						break;
+					case "winc":
+						increment[AttackMap.WHITE] = hasValue ? Long.parseLong(tokens[++i]) : 0;
+						break;
+					case "binc":
+						increment[AttackMap.BLACK] = hasValue ? Long.parseLong(tokens[++i]) : 0;
+						break;
+					case "movestogo":
+						movesToGo = hasValue ? Integer.parseInt(tokens[++i]) : 0;
+						break;
+					case "movetime":
+						moveTime = hasValue ? Long.parseLong(tokens[++i]) : -1;
+						break;
+					case "depth":
+						depth = hasValue ? Math.min(MAX_DEPTH, Math.max(1, Integer.parseInt(tokens[++i]))) : depth;
+						break;
+					case "infinite":
+						infinite = true;
+						break;
+					case "ponder":
+						ponder = true;
+						break;
+					default: // nodes, mate and searchmoves are not supported.
+						break;
+				}
+			}
+		} catch (NumberFormatException e) {
+			send("info string bad go command: " + e.getMessage());
+		}
+
+		int us = game.getTurn() == GameSession.Player.white ? AttackMap.WHITE : AttackMap.BLACK;
+		long time = 0; // No limit.
+		if (moveTime >= 0) {
+			time = Math.max(1, moveTime);
+		} else if (clock[us] >= 0 && !infinite) {
+			time = budget(clock[us], increment[us], movesToGo);
+		}
+
+		GameSession position = new GameSession(game);
+		int maxDepth = depth;
+		long limit = ponder ? 0 : time;
+		synchronized (this) {
+			generation++;
+			holding = ponder || infinite;
+			stopping = false;
+			held = null;
+			ponderTime = ponder ? time : 0;
+			searched = position;
+			running = searcher.submit(() -> run(position, maxDepth, limit));
+		}
+	}
+
+	/**
+	 * Returns the time to spend on one move: an even share of what is left
+	 * on the clock plus most of the increment, but never more than half the
+	 * clock.
+	 */
+	static long budget(long remaining, long increment, int movesToGo) {
+		long time = remaining / (movesToGo > 0 ? movesToGo : MOVES_TO_GO) + increment * 3 / 4;
+		return Math.max(1, Math.min(time, remaining / 2));
+	}
+
+	private void run(GameSession position, int maxDepth, long limit) {
+		Search.Result result;
+		try {
+			result = search.search(position, maxDepth, limit, null);
+		} catch (InterruptedException e) {
+			return;
+		}
+		synchronized (this) {
+			if (holding) {
+				held = result;
+			} else {
+				sendBestMove(result, position);
+			}
+		}
+	}
+
+	private void depthDone(Search.Result result) {
+		GameSession position;
+		synchronized (this) {
+			// A stop can land before the search has cleared its stop flag; catch it here.
+			if (stopping) {
+				search.stop();
+			}
+			position = searched;
+		}
+		StringBuilder sb = new StringBuilder(160);
+		sb.append("info depth ").append(result.depth).append(" score ").append(Search.scoreText(result.score))
+				.append(" nodes ").append(result.nodes).append(" nps ").append(result.nodesPerSecond())
+				.append(" time ").append(result.elapsedNanos / 1_000_000);
+		int[] line = principalVariation(position, result.move, result.depth);
+		if (line.length > 0) {
+			sb.append(" pv");
+		}
+		for (int move : line) {
+			appendMove(sb.append(' '), move);
+		}
+		send(sb.toString());
+	}
+
+	// Follows the transposition table's best moves from the root, as long as they are legal.
+	private int[] principalVariation(GameSession position, int first, int length) {
+		if (first == 0) {
+			return new int[0];
+		}
+		GameSession walk = new GameSession(position);
+		int[] line = new int[length];
+		int[] legal = new int[MoveGenerator.MAX_MOVES];
+		int n = 0;
+		int move = first;
+		while (move != 0 && n < length) {
+			int count = MoveGenerator.generateLegal(walk, legal);
+			boolean found = false;
+			for (int i = 0; i < count && !found; i++) {
+				found = legal[i] == move;
+			}
+			if (!found) {
+				break;
+			}
+			line[n++] = move;
+			walk.makeMove(move);
+			move = TranspositionTable.move(search.table().probe(walk.getZobristKey()));
+		}
+		int[] pv = new int[n];
+		System.arraycopy(line, 0, pv, 0, n);
+		return pv;
+	}
+
+	// Called with the lock held.
+	private void sendBestMove(Search.Result result, GameSession position) {
+		StringBuilder sb = new StringBuilder("bestmove ");
+		if (result.move == 0) {
+			sb.append("0000");
+		} else {
+			appendMove(sb, result.move);
+			int[] line = principalVariation(position, result.move, 2);
+			if (line.length == 2) {
+				appendMove(sb.append(" ponder "), line[1]);
+			}
+		}
+		send(sb.toString());
+	}
+
+	private static void appendMove(StringBuilder sb, int move) {
+		for (int square : new int[] { MoveGenerator.from(move), MoveGenerator.to(move) }) {
+			sb.append((char) ('a' + (square & 7))).append((char) ('1' + (square >> 3)));
+		}
+		if (MoveGenerator.promotion(move) != 0) {
+			sb.append(Character.toLowerCase(MoveGenerator.promotionChar(move)));
+		}
+	}
+
+	/**
+	 * Ends the search in progress; its bestmove is sent as soon as it returns.
+	 */
+	private synchronized void stop() {
+		if (running == null) {
+			return;
+		}
+		holding = false;
+		stopping = true;
+		search.stop();
+		if (held != null) {
+			sendBestMove(held, searched);
+			held = null;
+		}
+	}
+
+	private void ponderhit() {
+		long time;
+		int current;
+		synchronized (this) {
+			if (running == null) {
+				return;
+			}
+			holding = false;
+			if (held != null) { // Already done: play it now.
+				sendBestMove(held, searched);
+				held = null;
+				return;
+			}
+			time = ponderTime;
+			current = generation;
+		}
+		if (time > 0) {
+			timer.schedule(() -> {
+				synchronized (this) {
+					if (generation == current) {
+						stopping = true;
+						search.stop();
+					}
+				}
+			}, time, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	private void stopAndWait() throws InterruptedException {
+		stop();
+		Future<?> task;
+		synchronized (this) {
+			task = running;
+		}
+		if (task != null) {
+			try {
+				task.get();
+			} catch (ExecutionException e) {
+				throw new IllegalStateException("Search failed", e.getCause());
+			}
+		}
+		synchronized (this) {
+			running = null;
+		}
+	}
+
+	private void send(String line) {
+		synchronized (out) {
+			out.print(line);
+			out.print('\n');
+			out.flush();
+		}
+	}
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		PrintStream out = new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out)), false,
+				StandardCharsets.UTF_8);
+		Uci uci = new Uci(out);
+		BufferedReader in = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+		String line;
+		while ((line = in.readLine()) != null) {
+			if (!uci.command(line)) {
+				return;
+			}
+		}
+		uci.command("quit");
+	}
+}
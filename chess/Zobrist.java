@@ -0,0 +1,78 @@
+package chess;
+
+/**
+ * Random keys for Zobrist hashing. A position's key is the XOR of one key
+ * per piece on its square, one for the castling rights left, one for the
+ * en passant file and one when black is to move, so a move only has to XOR
+ * in the few keys it changes.
+ */
+final class Zobrist {
+
+	private static final long[][] PIECE_SQUARE = new long[ReturnPiece.PieceType.values().length][64];
+	private static final long[] CASTLING = new long[16];
+	private static final long[] EN_PASSANT_FILE = new long[8];
+	static final long BLACK_TO_MOVE;
+
+	// Castling flag indexes, one per *Moved boolean in GameSession.
+	static final int WHITE_KING = 0;
+	static final int BLACK_KING = 1;
+	static final int WHITE_KINGSIDE_ROOK = 2;
+	static final int WHITE_QUEENSIDE_ROOK = 3;
+	static final int BLACK_KINGSIDE_ROOK = 4;
+	static final int BLACK_QUEENSIDE_ROOK = 5;
+
+	// Castling rights bits, the K, Q, k and q of a FEN record.
+	static final int WHITE_KINGSIDE = 1;
+	static final int WHITE_QUEENSIDE = 2;
+	static final int BLACK_KINGSIDE = 4;
+	static final int BLACK_QUEENSIDE = 8;
+
+	static {
+		// Fixed seed, so keys are the same from run to run.
+		long seed = 0x2545F4914F6CDD1DL;
+		for (long[] squares : PIECE_SQUARE) {
+			for (int i = 0; i < 64; i++) {
+				seed = next(seed);
+				squares[i] = mix(seed);
+			}
+		}
+		for (int i = 0; i < CASTLING.length; i++) {
+			seed = next(seed);
+			CASTLING[i] = mix(seed);
+		}
+		for (int i = 0; i < EN_PASSANT_FILE.length; i++) {
+			seed = next(seed);
+			EN_PASSANT_FILE[i] = mix(seed);
+		}
+		seed = next(seed);
+		BLACK_TO_MOVE = mix(seed);
+	}
+
+	private Zobrist() {
+	}
+
+	static long piece(ReturnPiece.PieceType type, int square) {
+		return PIECE_SQUARE[type.ordinal()][square];
+	}
+
+	// One key per combination of rights, so positions that differ only in
+	// how the rights were lost hash the same.
+	static long castling(int rights) {
+		return CASTLING[rights];
+	}
+
+	static long enPassant(int square) {
+		return EN_PASSANT_FILE[square & 7];
+	}
+
+	// SplitMix64 step and output mix.
+	private static long next(long seed) {
+		return seed + 0x9E3779B97F4A7C15L;
+	}
+
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+}
@@ -0,0 +1,95 @@
+package chess;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Micro-benchmarks for the move path: scripted games through Chess.play,
+ * move and square parsing, attack checks on crowded and sparse boards, and
+ * the cost of resetting with Chess.start. Run with -prof gc for bytes per op.
+ *
+ * Usage: java -jar jmh/target/benchmarks.jar -prof gc [MovePathBenchmark.name]
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class MovePathBenchmark {
+
+	private GameSession crowded;
+	private GameSession sparse;
+	// A field, not a constant, so the JIT cannot fold the parse away.
+	private String square = "e4";
+
+	@Setup
+	public void setUp() {
+		crowded = new GameSession();
+		sparse = Benchmarks.sparseBoard();
+	}
+
+	@Benchmark
+	public void playScriptedGame(Blackhole blackhole) {
+		Chess.start();
+		for (String move : Benchmarks.SCRIPTED_GAME) {
+			blackhole.consume(Chess.play(move));
+		}
+	}
+
+	@Benchmark
+	public void playEncodedGame(Blackhole blackhole) {
+		Chess.start();
+		for (int move : Benchmarks.ENCODED_GAME) {
+			blackhole.consume(Chess.play(move));
+		}
+	}
+
+	@Benchmark
+	public void parseMove(Blackhole blackhole) {
+		for (String text : Benchmarks.MOVE_TEXTS) {
+			blackhole.consume(MoveGenerator.parse(text));
+		}
+	}
+
+	@Benchmark
+	public int parseSquare() {
+		return MoveGenerator.parseSquare(square, 0, 2);
+	}
+
+	@Benchmark
+	public void attackCrowded(Blackhole blackhole) {
+		attackSweep(crowded, blackhole);
+	}
+
+	@Benchmark
+	public void attackSparse(Blackhole blackhole) {
+		attackSweep(sparse, blackhole);
+	}
+
+	@Benchmark
+	public int startReset() {
+		Chess.start();
+		return Chess.rp.piecesOnBoard.size();
+	}
+
+	// Asks about every square once, from white's side.
+	private static void attackSweep(GameSession session, Blackhole blackhole) {
+		for (ReturnPiece.PieceFile file : ReturnPiece.PieceFile.values()) {
+			for (int rank = 1; rank <= 8; rank++) {
+				blackhole.consume(session.isSquareUnderAttack(file, rank, GameSession.Player.white));
+			}
+		}
+	}
+}
@@ -0,0 +1,55 @@
+package chess;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class CheckpointStoreTest {
+
+	@TempDir
+	Path dir;
+
+	@Test
+	void leavesAShortFileThatIsNotOursAlone() throws IOException {
+		Path file = dir.resolve("notes.txt");
+		Files.write(file, "hello".getBytes());
+		assertThrows(IOException.class, () -> CheckpointStore.open(file, 4));
+		assertArrayEquals("hello".getBytes(), Files.readAllBytes(file));
+	}
+
+	@Test
+	void leavesALongFileThatIsNotOursAlone() throws IOException {
+		Path file = dir.resolve("other.bin");
+		byte[] bytes = new byte[2 * CheckpointStore.SLOT_SIZE];
+		Files.write(file, bytes);
+		assertThrows(IOException.class, () -> CheckpointStore.open(file, 4));
+		assertArrayEquals(bytes, Files.readAllBytes(file));
+	}
+
+	@Test
+	void restoresAGameAfterReopening() throws IOException {
+		Path file = dir.resolve("games.ckp");
+		GameSession session = new GameSession();
+		try (CheckpointStore store = CheckpointStore.open(file, 4)) {
+			store.reset(2, session);
+			for (String move : Benchmarks.SCRIPTED_GAME) {
+				session.play(move);
+				store.played(2, session, session.lastMove());
+			}
+		}
+		GameSession restored = new GameSession();
+		try (CheckpointStore store = CheckpointStore.open(file, 1)) {
+			assertEquals(4, store.games());
+			assertTrue(store.restore(2, restored));
+		}
+		assertEquals(Fen.toFen(session), Fen.toFen(restored));
+	}
+}
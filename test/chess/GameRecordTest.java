@@ -0,0 +1,48 @@
+package chess;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class GameRecordTest {
+
+	@TempDir
+	Path dir;
+
+	@Test
+	void readsBackWhatWasWritten() throws IOException {
+		Path file = dir.resolve("games.cgr");
+		int[] moves = Benchmarks.ENCODED_GAME;
+		try (GameRecordWriter writer = new GameRecordWriter(file)) {
+			writer.write(moves, moves.length, null);
+			writer.write(moves, 4, ReturnPlay.Message.DRAW);
+		}
+		// Reopening appends after the games already there, with no second magic.
+		try (GameRecordWriter writer = new GameRecordWriter(file)) {
+			writer.write(moves, 2, ReturnPlay.Message.RESIGN_WHITE_WINS);
+		}
+		assertEquals(GameRecordWriter.MAGIC_SIZE + 3 * GameRecordWriter.HEADER_SIZE + 2 * (moves.length + 4 + 2),
+				Files.size(file));
+
+		try (GameRecordReader reader = new GameRecordReader(file)) {
+			int[] counts = { moves.length, 4, 2 };
+			ReturnPlay.Message[] results = { null, ReturnPlay.Message.DRAW, ReturnPlay.Message.RESIGN_WHITE_WINS };
+			for (int game = 0; game < 3; game++) {
+				assertTrue(reader.next());
+				assertEquals(counts[game], reader.moveCount());
+				assertEquals(results[game], reader.result());
+				for (int i = 0; i < counts[game]; i++) {
+					assertEquals(moves[i], reader.move(i));
+				}
+			}
+			assertFalse(reader.next());
+		}
+	}
+}
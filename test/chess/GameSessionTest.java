@@ -0,0 +1,158 @@
+package chess;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+class GameSessionTest {
+
+	// Plays the moves, each of which must be accepted, and returns the session.
+	private static GameSession playAll(String... moves) {
+		return playAll(new GameSession(), moves);
+	}
+
+	private static GameSession playAll(GameSession session, String... moves) {
+		for (String move : moves) {
+			assertNotEquals(ReturnPlay.Message.ILLEGAL_MOVE, session.play(move).message, move);
+		}
+		return session;
+	}
+
+	@Test
+	void whiteTakesEnPassant() {
+		GameSession session = playAll("e2 e4", "a7 a6", "e4 e5", "d7 d5", "e5 d6");
+		assertEquals("rnbqkbnr/1pp1pppp/p2P4/8/8/8/PPPP1PPP/RNBQKBNR b KQkq - 0 3", Fen.toFen(session));
+	}
+
+	@Test
+	void blackTakesEnPassant() {
+		GameSession session = playAll("a2 a3", "d7 d5", "a3 a4", "d5 d4", "e2 e4", "d4 e3");
+		assertEquals("rnbqkbnr/ppp1pppp/8/8/P7/4p3/1PPP1PPP/RNBQKBNR w KQkq - 0 4", Fen.toFen(session));
+	}
+
+	@Test
+	void takebackRestoresThePawnTakenEnPassant() {
+		GameSession session = playAll("e2 e4", "a7 a6", "e4 e5", "d7 d5");
+		String before = Fen.toFen(session);
+		long key = session.getZobristKey();
+		session.play("e5 d6");
+		session.takeback();
+		assertEquals(before, Fen.toFen(session));
+		assertEquals(key, session.getZobristKey());
+	}
+
+	@Test
+	void enPassantOnlyRightAfterTheTwoStep() {
+		GameSession session = playAll("e2 e4", "a7 a6", "e4 e5", "d7 d5", "h2 h3", "h7 h6");
+		assertEquals(ReturnPlay.Message.ILLEGAL_MOVE, session.play("e5 d6").message);
+	}
+
+	@Test
+	void pawnsDoNotMoveBackwards() {
+		GameSession session = playAll("e2 e4", "a7 a6");
+		assertEquals(ReturnPlay.Message.ILLEGAL_MOVE, session.play("e4 e3").message);
+		session = playAll("e2 e4", "e7 e5", "g1 f3");
+		assertEquals(ReturnPlay.Message.ILLEGAL_MOVE, session.play("e5 e6").message);
+	}
+
+	@Test
+	void pawnsDoNotJumpOverPieces() {
+		GameSession session = playAll("e2 e4", "e7 e6", "a2 a3", "f8 d6", "a3 a4");
+		String before = Fen.toFen(session);
+		assertEquals(ReturnPlay.Message.ILLEGAL_MOVE, session.play("d7 d5").message);
+		assertEquals(before, Fen.toFen(session));
+		assertEquals(-1, session.getEnPassantSquare());
+	}
+
+	@Test
+	void pawnsPushOnlyOntoEmptySquares() {
+		GameSession session = playAll("e2 e4", "e7 e5");
+		assertEquals(ReturnPlay.Message.ILLEGAL_MOVE, session.play("e4 e5").message);
+		assertEquals(ReturnPlay.Message.ILLEGAL_MOVE, playAll("e2 e3", "a7 a6").play("e3 e5").message);
+	}
+
+	// play() must accept exactly the moves MoveGenerator.generateLegal lists.
+	@Test
+	void playAgreesWithTheMoveGenerator() {
+		Random random = new Random(7);
+		int[] moves = new int[MoveGenerator.MAX_MOVES];
+		for (int game = 0; game < 10; game++) {
+			GameSession session = new GameSession();
+			for (int ply = 0; ply < 80; ply++) {
+				int count = MoveGenerator.generateLegal(session, moves);
+				if (count == 0) {
+					break;
+				}
+				Set<Integer> legal = new HashSet<>();
+				for (int i = 0; i < count; i++) {
+					legal.add(MoveGenerator.encode(MoveGenerator.from(moves[i]), MoveGenerator.to(moves[i]), 0));
+				}
+				String fen = Fen.toFen(session);
+				for (int from = 0; from < 64; from++) {
+					if (session.pieceAt(from) == null) {
+						continue;
+					}
+					for (int to = 0; to < 64; to++) {
+						int move = MoveGenerator.encode(from, to, 0);
+						boolean accepted = session.play(MoveGenerator.toText(move)).message != ReturnPlay.Message.ILLEGAL_MOVE;
+						assertEquals(legal.contains(move), accepted, fen + " " + MoveGenerator.toText(move));
+						if (accepted) {
+							session.takeback();
+						}
+						assertEquals(fen, Fen.toFen(session));
+					}
+				}
+				session.play(MoveGenerator.toText(moves[random.nextInt(count)]));
+			}
+		}
+	}
+
+	@Test
+	void threefoldRepetitionIsADraw() {
+		GameSession session = playAll("g1 f3", "g8 f6", "f3 g1", "f6 g8", "g1 f3", "g8 f6", "f3 g1");
+		assertEquals(ReturnPlay.Message.DRAW, session.play("f6 g8").message);
+	}
+
+	@Test
+	void twofoldRepetitionIsNotADraw() {
+		GameSession session = playAll("g1 f3", "g8 f6", "f3 g1");
+		assertNotEquals(ReturnPlay.Message.DRAW, session.play("f6 g8").message);
+	}
+
+	// Rights lost to rook moves and then to king moves leave the same position.
+	@Test
+	void repetitionIgnoresHowCastlingRightsWereLost() {
+		GameSession session = playAll("e2 e3", "e7 e6", "h2 h4", "h7 h5", "h1 h3", "h8 h6", "h3 h1", "h6 h8",
+				"a2 a4", "a7 a5", "a1 a3", "a8 a6", "a3 a1", "a6 a8");
+		String fen = "rnbqkbnr/1ppp1pp1/4p3/p6p/P6P/4P3/1PPP1PP1/RNBQKBNR w - -";
+		GameSession loaded = new GameSession();
+		new Fen().load(loaded, fen + " 0 1");
+		assertEquals(loaded.getZobristKey(), session.getZobristKey());
+
+		playAll(session, "e1 e2", "e8 e7", "e2 e1", "e7 e8");
+		assertEquals(loaded.getZobristKey(), session.getZobristKey());
+		playAll(session, "e1 e2", "e8 e7", "e2 e1");
+		assertEquals(ReturnPlay.Message.DRAW, session.play("e7 e8").message);
+	}
+
+	@Test
+	void fiftyMovesWithoutCaptureOrPawnMoveIsADraw() {
+		GameSession session = new GameSession();
+		new Fen().load(session, "4k3/4p3/8/8/8/8/8/R3K3 b - - 98 60");
+		assertNotEquals(ReturnPlay.Message.DRAW, session.play("e8 d8").message);
+		assertEquals(ReturnPlay.Message.DRAW, session.play("a1 a2").message);
+	}
+
+	@Test
+	void pawnMoveRestartsTheFiftyMoveCount() {
+		GameSession session = new GameSession();
+		new Fen().load(session, "4k3/4p3/8/8/8/8/8/R3K3 b - - 99 60");
+		assertNotEquals(ReturnPlay.Message.DRAW, session.play("e7 e6").message);
+		assertEquals(0, session.getHalfmoveClock());
+	}
+}
@@ -0,0 +1,47 @@
+package chess;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class OpeningBookTest {
+
+	@TempDir
+	Path dir;
+
+	@Test
+	void buildsABookKeyedByPolyglotKeys() throws IOException {
+		Path games = dir.resolve("games.txt");
+		Files.write(games, Arrays.asList(
+				"e2 e4", "e7 e5", "g1 f3", "b8 c6", "f1 c4", "g8 f6", "e1 g1", "",
+				"e2 e4", "c7 c5", "",
+				"d2 d4", "d7 d5"));
+		Path file = dir.resolve("book.bin");
+		assertEquals(10, OpeningBook.build(file, Collections.singletonList(games), 20));
+
+		try (OpeningBook book = OpeningBook.open(file)) {
+			GameSession session = new GameSession();
+			int[] moves = new int[8];
+			int[] weights = new int[8];
+			assertEquals(2, book.lookup(0x463B96181691FC9CL, moves, weights));
+			assertEquals(List.of("e2 e4", "d2 d4"), book.moves(session));
+			assertEquals(2, weights[0]);
+
+			for (String move : new String[] { "e2 e4", "e7 e5", "g1 f3", "b8 c6", "f1 c4", "g8 f6" }) {
+				session.play(move);
+			}
+			// Stored as the king taking its rook, played as the king moving two.
+			assertEquals(1, book.lookup(PolyglotKey.of(session), moves, weights));
+			assertEquals(7 | (4 << 6), moves[0]);
+			assertEquals(List.of("e1 g1"), book.moves(session));
+		}
+	}
+}
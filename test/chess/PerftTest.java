@@ -0,0 +1,48 @@
+package chess;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+// The published counts for the usual perft positions, kept shallow so they run with every build.
+class PerftTest {
+
+	private static void assertCounts(String fen, long... counts) {
+		GameSession session = new GameSession();
+		new Fen().load(session, fen);
+		for (int depth = 1; depth <= counts.length; depth++) {
+			assertEquals(counts[depth - 1], Perft.perft(session, depth), fen + " depth " + depth);
+			assertEquals(fen, Fen.toFen(session));
+		}
+	}
+
+	@Test
+	void startPosition() {
+		assertCounts(Fen.START, 20L, 400L, 8902L, 197281L);
+	}
+
+	@Test
+	void kiwipete() {
+		assertCounts(Perft.KIWIPETE, 48L, 2039L, 97862L);
+	}
+
+	@Test
+	void rookEndgameWithEnPassantPins() {
+		assertCounts("8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1", 14L, 191L, 2812L, 43238L);
+	}
+
+	@Test
+	void promotionsAndCastlingUnderCheck() {
+		assertCounts("r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1", 6L, 264L, 9467L);
+	}
+
+	@Test
+	void promotionByCapture() {
+		assertCounts("rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8", 44L, 1486L, 62379L);
+	}
+
+	@Test
+	void quietMiddlegame() {
+		assertCounts("r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10", 46L, 2079L, 89890L);
+	}
+}
@@ -0,0 +1,41 @@
+package chess;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+// The test positions published with the Polyglot book format.
+class PolyglotKeyTest {
+
+	private static long key(String... moves) {
+		GameSession session = new GameSession();
+		for (String move : moves) {
+			assertEquals(null, session.play(move).message, move);
+		}
+		return PolyglotKey.of(session);
+	}
+
+	@Test
+	void startPosition() {
+		assertEquals(0x463B96181691FC9CL, key());
+	}
+
+	@Test
+	void publishedLines() {
+		assertEquals(0x823C9B50FD114196L, key("e2 e4"));
+		assertEquals(0x0756B94461C50FB0L, key("e2 e4", "d7 d5"));
+		assertEquals(0x662FAFB965DB29D4L, key("e2 e4", "d7 d5", "e4 e5"));
+		assertEquals(0x22A48B5A8E47FF78L, key("e2 e4", "d7 d5", "e4 e5", "f7 f5"));
+		assertEquals(0x652A607CA3F242C1L, key("e2 e4", "d7 d5", "e4 e5", "f7 f5", "e1 e2"));
+		assertEquals(0x00FDD303C946BDD9L, key("e2 e4", "d7 d5", "e4 e5", "f7 f5", "e1 e2", "e8 f7"));
+		assertEquals(0x3C8123EA7B067637L, key("a2 a4", "b7 b5", "h2 h4", "b5 b4", "c2 c4"));
+		assertEquals(0x5C3F9B829B279560L, key("a2 a4", "b7 b5", "h2 h4", "b5 b4", "c2 c4", "b4 c3", "a1 a3"));
+	}
+
+	@Test
+	void sameKeyFromFen() {
+		GameSession session = new GameSession();
+		new Fen().load(session, "rnbqkbnr/ppp1p1pp/8/3pPp2/8/8/PPPP1PPP/RNBQKBNR w KQkq f6 0 3");
+		assertEquals(0x22A48B5A8E47FF78L, PolyglotKey.of(session));
+	}
+}
@@ -0,0 +1,20 @@
+package chess;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+class SearchTest {
+
+	@Test
+	void reportsItsOwnRootMoveNotTheTables() {
+		GameSession session = new GameSession();
+		new Fen().load(session, "6k1/5ppp/8/8/8/8/8/R5K1 w - - 0 1");
+		TranspositionTable tt = new TranspositionTable(1);
+		// As a helper searching deeper would leave it: a deeper root entry the table keeps.
+		tt.store(session.getZobristKey(), MoveGenerator.parse("a1 a2"), 0, 20, TranspositionTable.EXACT);
+
+		Search.Result result = new Search(tt).search(session, 3, 0, null);
+		assertEquals("a1 a8", MoveGenerator.toText(result.move));
+	}
+}
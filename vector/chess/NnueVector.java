@@ -0,0 +1,71 @@
+package chess;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Nnue's arithmetic with jdk.incubator.vector, in the widest vectors the
+ * CPU has. Kept out of the main source tree because it needs
+ * --add-modules jdk.incubator.vector both to compile and to run; the pom
+ * compiles it in an execution of its own, and Nnue loads it by name and
+ * falls back to plain loops when it is missing.
+ */
+final class NnueVector implements Nnue.Kernel {
+
+	private static final VectorSpecies<Short> SHORTS = ShortVector.SPECIES_PREFERRED;
+	private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+
+	@Override
+	public void add(short[] sums, short[] weights, int offset) {
+		int n = sums.length;
+		int i = 0;
+		for (int bound = SHORTS.loopBound(n); i < bound; i += SHORTS.length()) {
+			ShortVector.fromArray(SHORTS, sums, i).add(ShortVector.fromArray(SHORTS, weights, offset + i))
+					.intoArray(sums, i);
+		}
+		for (; i < n; i++) {
+			sums[i] += weights[offset + i];
+		}
+	}
+
+	@Override
+	public void subtract(short[] sums, short[] weights, int offset) {
+		int n = sums.length;
+		int i = 0;
+		for (int bound = SHORTS.loopBound(n); i < bound; i += SHORTS.length()) {
+			ShortVector.fromArray(SHORTS, sums, i).sub(ShortVector.fromArray(SHORTS, weights, offset + i))
+					.intoArray(sums, i);
+		}
+		for (; i < n; i++) {
+			sums[i] -= weights[offset + i];
+		}
+	}
+
+	@Override
+	public int output(short[] us, short[] them, short[] weights) {
+		int n = us.length;
+		return dot(us, weights, 0, n) + dot(them, weights, n, n);
+	}
+
+	// Clipped sums against weights[offset..offset+n). Each product fits a
+	// short; pairs of them are widened to ints by reading the lanes as ints
+	// and splitting each into its sign-extended halves.
+	private static int dot(short[] sums, short[] weights, int offset, int n) {
+		IntVector total = IntVector.zero(INTS);
+		int i = 0;
+		for (int bound = SHORTS.loopBound(n); i < bound; i += SHORTS.length()) {
+			ShortVector products = ShortVector.fromArray(SHORTS, sums, i).max((short) 0).min((short) Nnue.CLIP)
+					.mul(ShortVector.fromArray(SHORTS, weights, offset + i));
+			IntVector pairs = products.reinterpretAsInts();
+			total = total.add(pairs.lanewise(VectorOperators.LSHL, 16).lanewise(VectorOperators.ASHR, 16))
+					.add(pairs.lanewise(VectorOperators.ASHR, 16));
+		}
+		int sum = total.reduceLanes(VectorOperators.ADD);
+		for (; i < n; i++) {
+			sum += Math.min(Math.max(sums[i], 0), Nnue.CLIP) * weights[offset + i];
+		}
+		return sum;
+	}
+}